@@ -1,10 +1,19 @@
 package cassdemo;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.backend.MirrorReconciler;
+import cassdemo.backend.MirrorTable;
+import cassdemo.backend.OccupancySummary;
+import cassdemo.service.ReservationService;
+import cassdemo.shard.ShardCoordinator;
+import cassdemo.snapshot.SnapshotExporter;
+import cassdemo.snapshot.SnapshotStore;
 import cassdemo.tables.Locker;
 import cassdemo.tables.Shipment;
 import cassdemo.testing.Testing;
@@ -19,6 +28,7 @@ public class Main {
 		logger.debug("Main started");
 		String contactPoint = null;
 		String keyspace = null;
+		String snapshotFile = null;
 
 		Properties properties = new Properties();
 		try {
@@ -26,30 +36,75 @@ public class Main {
 
 			contactPoint = properties.getProperty("contact_point");
 			keyspace = properties.getProperty("keyspace");
+			snapshotFile = properties.getProperty("snapshot_file", "snapshot.bin");
 		} catch (IOException ex) {
 			ex.printStackTrace();
 		}
 			
-		BackendSession session = new BackendSession(contactPoint, keyspace);
+		BackendSession session = new BackendSession(contactPoint, keyspace, properties);
+		if (Boolean.parseBoolean(properties.getProperty("snapshot.warm_start", "false")) && Files.exists(Paths.get(snapshotFile))) {
+			SnapshotStore store = SnapshotStore.open(Paths.get(snapshotFile));
+			if (store.canCatchUp()) {
+				try {
+					long applied = session.useSnapshot(store);
+					logger.info("Warm start from snapshot " + store.getCreatedAt() + ", caught up " + applied + " keys");
+				} catch (BackendException e) {
+					logger.warn(e.getMessage() + " Starting cold");
+				}
+			} else {
+				logger.warn("Snapshot " + snapshotFile + " from " + store.getCreatedAt() + " is too old to catch up, starting cold");
+			}
+		}
+
+		if (args.length > 0 && args[0].equals("serve")) {
+			ShardCoordinator shards = Boolean.parseBoolean(properties.getProperty("shard.enabled", "false"))
+					? ShardCoordinator.fromProperties(session, properties, Integer.parseInt(properties.getProperty("service.port", "8080")))
+					: null;
+			ReservationService service = ReservationService.fromProperties(session, shards, properties);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				/* Leave the ring first so the other workers stop forwarding here while we drain */
+				if (shards != null) {
+					shards.close();
+				}
+				service.stop(5);
+				session.close();
+			}));
+			service.start();
+			if (shards != null) {
+				shards.start();
+			}
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(session::close));
+
 		Testing testing = new Testing(session);
 
 		Scanner in = new Scanner(System.in);
 		do {
 			System.out.println(
-					"Menu\nx - EXIT\ns - Add shipment\nl - Add locker\nss - Show shipments\nsl - Show lockers\nisl- Insert shipment into locker\nseed - Run seeds\nstress - Run stress test");
+					"Menu\nx - EXIT\nclear - Delete all data\ns - Add shipment\nl - Add locker\nss - Show shipments\nsl - Show lockers\nisl- Insert shipment into locker\nwhere - Find locker holding a shipment\nasl - Assign many shipments to locker\nocc - Show locker occupancy\nrocc - Rebuild locker occupancy counters\nexport - Export snapshot\ntrace - Set reservation trace sample rate\nslow - Set slow statement threshold\nwarm - Serve lockers and shipments from snapshot\nmig - Migrate locker boxes to blob layout\nrec - Reconcile locker_shipments and shipment_lockers\nseed - Run seeds\nstress - Run stress test");
 			String input = in.nextLine();
 			switch (input) {
 				case "x" -> {
 					System.out.println("EXITING");
-					session.deleteAll();//delete only shipment_locker locker_shipment
 					System.exit(0);
 				}
+				case "clear" -> {
+					System.out.println("Type YES to delete all data: ");
+					if (in.nextLine().equals("YES")) {
+						session.deleteAll();
+					}
+				}
 				case "s" -> {
 					System.out.println("Type user name: ");
 					String name = in.nextLine();
 					System.out.println("Type box-size (1-3): ");
 					byte boxsize = Byte.parseByte(in.nextLine());
-					session.insertShipment(name, boxsize);
+					try {
+						session.insertShipment(name, boxsize);
+					} catch (BackendException e) {
+						System.err.println("Error adding shipment: " + e.getMessage());
+					}
 				}
 				case "l" -> {
 					System.out.println("Type locker name: ");
@@ -58,7 +113,11 @@ public class Main {
 
 					String[] inputBoxes = in.nextLine().split(" ");
 					Byte[] boxes_list = Arrays.stream(inputBoxes).map(Byte::parseByte).toArray(Byte[]::new);
-					session.insertLocker(name, boxes_list);
+					try {
+						session.insertLocker(name, boxes_list);
+					} catch (BackendException e) {
+						System.err.println("Error adding locker: " + e.getMessage());
+					}
 				}
 				case "ss" -> {
 					System.out.println("Shipments:");
@@ -110,7 +169,97 @@ public class Main {
 						System.out.println("Invalid UUID format for shipmentID.");
 						break;
 					}
-					session.insertShipmentIntoLocker(lockerID,shipmentID);
+					System.out.println("Result: " + session.insertShipmentIntoLocker(lockerID,shipmentID));
+				}
+				case "where" -> {
+					System.out.println("Type shipmentID: ");
+					try {
+						UUID shipmentID = UUID.fromString(in.nextLine());
+						System.out.println(Objects.requireNonNullElse(session.findConfirmedLocker(shipmentID), "Shipment is not in any locker."));
+					} catch (IllegalArgumentException e) {
+						System.out.println("Invalid UUID format for shipmentID.");
+					}
+				}
+				case "asl" -> {
+					System.out.println("Type lockerID: ");
+					UUID lockerID;
+					List<UUID> shipmentIDs = new ArrayList<>();
+					try {
+						lockerID = UUID.fromString(in.nextLine());
+						System.out.println("Type shipmentIDs (e.g., id1 id2 id3): ");
+						for (String shipmentIDInput : in.nextLine().trim().split(" +")) {
+							shipmentIDs.add(UUID.fromString(shipmentIDInput));
+						}
+					} catch (IllegalArgumentException e) {
+						System.out.println("Invalid UUID format.");
+						break;
+					}
+					session.assignShipmentsToLocker(lockerID, shipmentIDs)
+							.forEach((shipmentID, result) -> System.out.println(shipmentID + ": " + result));
+				}
+				case "occ" -> {
+					System.out.println("Locker occupancy:");
+					try {
+						session.refreshOccupancy();
+						Collection<OccupancySummary> summaries = session.getOccupancySummaries().values();
+						if (summaries.isEmpty()) {
+							System.out.println("No lockers found.");
+						} else {
+							for (OccupancySummary summary : summaries) {
+								System.out.println(summary.toString());
+							}
+						}
+					} catch (BackendException e) {
+						System.err.println("Error fetching occupancy: " + e.getMessage());
+					}
+				}
+				case "rocc" -> {
+					System.out.println("Corrected " + session.rebuildOccupancy() + " occupancy counters");
+				}
+				case "export" -> {
+					long records = new SnapshotExporter(session).export(Paths.get(snapshotFile));
+					System.out.println("Exported " + records + " records to " + snapshotFile);
+				}
+				case "warm" -> {
+					try {
+						SnapshotStore store = SnapshotStore.open(Paths.get(snapshotFile));
+						long applied = session.useSnapshot(store);
+						System.out.println("Serving lockers and shipments from snapshot " + store.getCreatedAt() + ", caught up " + applied + " keys");
+					} catch (BackendException e) {
+						System.err.println("Error loading snapshot: " + e.getMessage());
+					}
+				}
+				case "trace" -> {
+					System.out.println("Type fraction of reservations to trace (0-1): ");
+					try {
+						session.setTraceSampleRate(Double.parseDouble(in.nextLine()));
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid number.");
+					}
+				}
+				case "slow" -> {
+					System.out.println("Type slow statement threshold in ms: ");
+					try {
+						session.getSlowStatementLog().setThresholdMillis(Long.parseLong(in.nextLine()));
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid number.");
+					}
+				}
+				case "mig" -> {
+					System.out.println("Migrated " + session.migrateLockerBoxes() + " lockers");
+				}
+				case "rec" -> {
+					System.out.println("Type table to walk (ls - locker_shipments, sl - shipment_lockers): ");
+					String table = in.nextLine();
+					if (table.equals("ls") || table.equals("sl")) {
+						System.out.println("Type job name (an existing name resumes that job): ");
+						MirrorReconciler reconciler = MirrorReconciler.fromProperties(session,
+								table.equals("ls") ? MirrorTable.LOCKER_SHIPMENTS : MirrorTable.SHIPMENT_LOCKERS, in.nextLine(), properties);
+						boolean complete = reconciler.run();
+						System.out.println(reconciler + (complete ? "" : " - some ranges failed, run the same job again"));
+					} else {
+						System.out.println("Invalid table.");
+					}
 				}
 				case "seed" -> {
 					testing.seed();
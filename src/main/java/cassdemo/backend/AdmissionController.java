@@ -0,0 +1,220 @@
+package cassdemo.backend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Admission control for reservation requests.
+ *
+ * Every request first takes a global in-flight slot without waiting and keeps it while it queues,
+ * so requests waiting for a locker count toward the global limit and an overloaded service rejects
+ * at once instead of timing out in a queue. Requests for the same locker then queue up behind a small
+ * number of slots (per_locker_concurrency), at most per_locker_queue_depth may wait, and nobody
+ * waits longer than queue_timeout_ms. The limit adapts to observed latency (AIMD): it grows by one per "limit" fast completions
+ * while the system is busy and shrinks by 10% on a completion slower than latency_target_ms or
+ * failed, at most once per round trip: only requests started after the last decrease count, so one
+ * latency spike seen by many requests in flight is a single decrease. It never leaves
+ * [min_limit, max_in_flight]. Anything over a limit is rejected immediately.
+ *
+ * Off unless admission.enabled is set: with it on, claims on one locker are serialized in this process.
+ */
+public class AdmissionController {
+
+	private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+	private static final double BACKOFF_RATIO = 0.9;
+
+	private final boolean enabled;
+	private final int maxInFlight;
+	private final int minLimit;
+	private final long latencyTargetNanos;
+	private final int perLockerConcurrency;
+	private final int perLockerQueueDepth;
+	private final long queueTimeoutMillis;
+
+	/* Admitted requests plus those waiting in a locker queue */
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private volatile double limit;
+	private long lastDecreaseNanos = System.nanoTime(); // guarded by adjustLimit
+
+	private final Map<UUID, LockerQueue> lockers = new ConcurrentHashMap<>();
+
+	private final AtomicLong admitted = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+
+	private static final class LockerQueue {
+		final Semaphore slots;
+		int depth = 0; // guarded by the lockers map compute
+
+		LockerQueue(int concurrency) {
+			slots = new Semaphore(concurrency, true);
+		}
+	}
+
+	public final class Permit implements AutoCloseable {
+		private final UUID lockerId;
+		private final LockerQueue queue;
+		private final long startNanos = System.nanoTime();
+		private boolean success = false;
+		private boolean closed = false;
+
+		private Permit(UUID lockerId, LockerQueue queue) {
+			this.lockerId = lockerId;
+			this.queue = queue;
+		}
+
+		public void markSuccess() {
+			success = true;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				release(this, System.nanoTime() - startNanos, success);
+			}
+		}
+	}
+
+	public AdmissionController(boolean enabled, int maxInFlight, int initialLimit, int minLimit, long latencyTargetMillis,
+							   int perLockerConcurrency, int perLockerQueueDepth, long queueTimeoutMillis) {
+		this.enabled = enabled;
+		this.maxInFlight = maxInFlight;
+		this.minLimit = Math.min(minLimit, maxInFlight);
+		this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+		this.perLockerConcurrency = perLockerConcurrency;
+		this.perLockerQueueDepth = perLockerQueueDepth;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.limit = Math.max(this.minLimit, Math.min(initialLimit, maxInFlight));
+	}
+
+	public static AdmissionController fromProperties(Properties properties) {
+		return new AdmissionController(
+				Boolean.parseBoolean(properties.getProperty("admission.enabled", "false")),
+				Integer.parseInt(properties.getProperty("admission.max_in_flight", "64")),
+				Integer.parseInt(properties.getProperty("admission.initial_limit", "16")),
+				Integer.parseInt(properties.getProperty("admission.min_limit", "2")),
+				Long.parseLong(properties.getProperty("admission.latency_target_ms", "200")),
+				Integer.parseInt(properties.getProperty("admission.per_locker_concurrency", "1")),
+				Integer.parseInt(properties.getProperty("admission.per_locker_queue_depth", "8")),
+				Long.parseLong(properties.getProperty("admission.queue_timeout_ms", "1000")));
+	}
+
+	/* Returns null when the request has to be rejected */
+	public Permit tryAcquire(UUID lockerId) {
+		if (!enabled) {
+			return new Permit(lockerId, null);
+		}
+
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= (int) limit) {
+				return reject(lockerId, "in-flight limit " + (int) limit + " reached");
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+
+		LockerQueue queue = enqueue(lockerId);
+		if (queue == null) {
+			inFlight.decrementAndGet();
+			return reject(lockerId, "locker queue full");
+		}
+
+		boolean slot;
+		try {
+			slot = queue.slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			slot = false;
+		}
+		if (!slot) {
+			dequeue(lockerId);
+			inFlight.decrementAndGet();
+			return reject(lockerId, "timed out in locker queue");
+		}
+
+		admitted.incrementAndGet();
+		return new Permit(lockerId, queue);
+	}
+
+	private LockerQueue enqueue(UUID lockerId) {
+		int capacity = perLockerConcurrency + perLockerQueueDepth;
+		boolean[] full = {false};
+		LockerQueue queue = lockers.compute(lockerId, (k, v) -> {
+			if (v == null) {
+				v = new LockerQueue(perLockerConcurrency);
+			}
+			if (v.depth >= capacity) {
+				full[0] = true;
+			} else {
+				v.depth++;
+			}
+			return v;
+		});
+		return full[0] ? null : queue;
+	}
+
+	private void dequeue(UUID lockerId) {
+		lockers.computeIfPresent(lockerId, (k, v) -> --v.depth == 0 ? null : v);
+	}
+
+	private Permit reject(UUID lockerId, String reason) {
+		rejected.incrementAndGet();
+		logger.debug("Reservation for locker " + lockerId + " rejected: " + reason);
+		return null;
+	}
+
+	private void release(Permit permit, long latencyNanos, boolean success) {
+		if (permit.queue == null) {
+			return;
+		}
+		int current = inFlight.getAndDecrement();
+		permit.queue.slots.release();
+		dequeue(permit.lockerId);
+		adjustLimit(current, permit.startNanos, latencyNanos, success);
+	}
+
+	private synchronized void adjustLimit(int inFlightAtRelease, long startNanos, long latencyNanos, boolean success) {
+		if (!success || latencyNanos > latencyTargetNanos) {
+			/* Requests admitted before the last decrease already saw the old limit */
+			if (startNanos - lastDecreaseNanos >= 0) {
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+				lastDecreaseNanos = System.nanoTime();
+			}
+		} else if (inFlightAtRelease * 2 >= limit) {
+			/* Only grow while the current limit is actually being used */
+			limit = Math.min(maxInFlight, limit + 1.0 / limit);
+		}
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return "AdmissionController{limit=" + getLimit() + ", inFlight=" + getInFlight()
+				+ ", admitted=" + getAdmitted() + ", rejected=" + getRejected() + '}';
+	}
+}
@@ -1,20 +1,39 @@
 package cassdemo.backend;
 
 import java.util.*;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
+import cassdemo.snapshot.SnapshotStore;
 import cassdemo.tables.*;
 import com.datastax.driver.extras.codecs.jdk8.InstantCodec;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.utils.UUIDs;
 
 /*
  * For error handling done right see: 
@@ -27,17 +46,54 @@ import com.datastax.driver.core.Session;
  * https://stackoverflow.com/questions/30329956/cassandra-datastax-driver-retry-policy )
  */
 
-public class BackendSession {
+public class BackendSession implements ReservationBackend, AutoCloseable {
 
 	private static final Logger logger = LoggerFactory.getLogger(BackendSession.class);
 	public static MappingManager manager = null;
 	private Session session;
+	private final ExecutionProfiles profiles;
+	private final AdmissionController admission;
+	private final PlacementCache placements;
+	/* Look in shipment_lockers when a shipment has no shipment_placements row, for data written before the table */
+	private final boolean legacyPlacementLookup;
+	private final SlowStatementLog slowLog;
+	private final ReservationProtocol protocol = new ReservationProtocol(new SessionClaimStore(), Clock.systemUTC(), ThreadLocalRandom::current);
+
+	/* Snapshot serving lockers and shipments after a warm start, null when they are read from the cluster */
+	private volatile SnapshotStore warm;
+	private final long warmCatchUpNanos;
+	/* Writes record their keys in snapshot_changes only when snapshots are caught up from it */
+	private final boolean changeLog;
+
+	/* Fraction of reservations whose statements are traced by Cassandra, changeable at runtime */
+	private volatile double traceSampleRate;
+	private final ThreadLocal<Boolean> tracingReservation = ThreadLocal.withInitial(() -> false);
+
+	private static final long PREPARE_TIMEOUT_SECONDS = 30;
+	private static final int WARM_UP_QUERIES = 16;
+
+	/* Ready once statements are prepared and the pool is warm, not ready again once close() starts */
+	private volatile boolean ready = false;
+	private volatile boolean closing = false;
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private final AtomicLong changeLogFailures = new AtomicLong(0);
+	private final long drainTimeoutMillis;
 
 	public BackendSession(String contactPoint, String keyspace) throws BackendException {
+		this(contactPoint, keyspace, new Properties());
+	}
+
+	public BackendSession(String contactPoint, String keyspace, Properties properties) throws BackendException {
 
 		logger.debug("Backend starting");
+		long startNanos = System.nanoTime();
 		Cluster cluster = Cluster.builder().addContactPoint(contactPoint).build();
-		cluster.getConfiguration().getCodecRegistry().register(InstantCodec.instance);
+		cluster.getConfiguration().getCodecRegistry().register(InstantCodec.instance, ByteArrayCodec.instance);
+		profiles = new ExecutionProfiles(properties);
+		cluster.register(profiles);
+		slowLog = new SlowStatementLog(Long.parseLong(properties.getProperty("slow_log.threshold_ms", "500")));
+		cluster.register(slowLog);
+		traceSampleRate = Double.parseDouble(properties.getProperty("tracing.sample_rate", "0"));
 		try {
 			session = cluster.connect(keyspace);
 			manager = new MappingManager(session);
@@ -45,7 +101,53 @@ public class BackendSession {
 			throw new BackendException("Could not connect to the cluster. " + e.getMessage() + ".", e);
 		}
 		prepareStatements();
-		logger.debug("Backend successfully started");
+		warmUp();
+		admission = AdmissionController.fromProperties(properties);
+		placements = PlacementCache.fromProperties(properties);
+		occupancyRefreshNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(properties.getProperty("occupancy.refresh_ms", "5000")));
+		warmCatchUpNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(properties.getProperty("snapshot.catch_up_ms", "5000")));
+		changeLog = Boolean.parseBoolean(properties.getProperty("snapshot.change_log", "false"));
+		legacyPlacementLookup = Boolean.parseBoolean(properties.getProperty("placement.legacy_lookup", "true"));
+		drainTimeoutMillis = Long.parseLong(properties.getProperty("shutdown.drain_timeout_ms", "10000"));
+		ready = true;
+		logger.info("Backend ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+	}
+
+	/* Open connections to every host and get the request path going before the first real request */
+	private void warmUp() {
+		List<ResultSetFuture> futures = new ArrayList<>();
+		for (int i = 0; i < WARM_UP_QUERIES; i++) {
+			futures.add(session.executeAsync("SELECT release_version FROM system.local;"));
+		}
+		for (ResultSetFuture future : futures) {
+			try {
+				future.get(PREPARE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				logger.warn("Warm up query failed: " + e.getMessage());
+			}
+		}
+		logger.debug("Connection pool warmed up on " + session.getState().getConnectedHosts().size() + " hosts");
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/* Track an operation for the drain in close(); fails once the backend is closing */
+	private void enter() throws BackendException {
+		inFlight.incrementAndGet();
+		if (closing) {
+			exit();
+			throw new BackendException("Backend is shutting down");
+		}
+	}
+
+	private void exit() {
+		if (inFlight.decrementAndGet() == 0 && closing) {
+			synchronized (inFlight) {
+				inFlight.notifyAll();
+			}
+		}
 	}
 
 	/* Retrieve all records from each table */
@@ -66,6 +168,10 @@ public class BackendSession {
 	private static PreparedStatement INSERT_INTO_LOCKERS;
 	private static PreparedStatement INSERT_INTO_SHIPMENTS;
 	private static PreparedStatement INSERT_SHIPMENT_INTO_LOCKER;
+	/* INSERT_SHIPMENT_INTO_LOCKER with the shipment_placements row, for the CONFIRMED write */
+	private static PreparedStatement CONFIRM_SHIPMENT_IN_LOCKER;
+
+	private static PreparedStatement SELECT_SHIPMENTS_BY_IDS;
 
 	private static PreparedStatement DELETE_ALL_FROM_LOCKERS;
 	private static PreparedStatement DELETE_ALL_FROM_SHIPMENTS;
@@ -74,66 +180,261 @@ public class BackendSession {
 
 	/* Remove relationship between locker and shipment */
 	private static PreparedStatement DELETE_SHIPMENT_FROM_LOCKER_BY_ID;
-
+	/* Release of a CONFIRMED placement: conditional deletes of both rows, see releaseShipmentFromLocker */
+	private static PreparedStatement RELEASE_CONFIRMED_SHIPMENT;
+	private static PreparedStatement RELEASE_CONFIRMED_SHIPMENT_LOCKER;
+
+	/* Occupancy summaries, maintained incrementally on every CONFIRMED or released transition */
+	private static PreparedStatement SELECT_ALL_FROM_LOCKER_OCCUPANCY;
+	private static PreparedStatement UPDATE_LOCKER_OCCUPANCY;
+	private static PreparedStatement SELECT_LOCKER_OCCUPANCY_BY_ID;
+	private static PreparedStatement DELETE_ALL_FROM_LOCKER_OCCUPANCY;
+
+	/* Snapshot catch-up: keys touched by writes, in minute buckets split over CHANGE_SHARDS partitions by locker */
+	private static PreparedStatement INSERT_SNAPSHOT_CHANGE;
+	private static PreparedStatement SELECT_SNAPSHOT_CHANGES;
+	private static PreparedStatement DELETE_ALL_FROM_SNAPSHOT_CHANGES;
+
+	/* Online migration of locker_boxes list<tinyint> into the locker_box_layout blob */
+	private static PreparedStatement SELECT_LOCKER_BOXES_FOR_MIGRATION;
+	private static PreparedStatement MIGRATE_LOCKER_BOXES;
+
+	/* Current CONFIRMED placement of each shipment, one row per shipment for tracking lookups */
+	private static PreparedStatement SELECT_SHIPMENT_PLACEMENT;
+	private static PreparedStatement SELECT_SHIPMENT_PLACEMENT_WRITETIME;
+	private static PreparedStatement UPSERT_SHIPMENT_PLACEMENT;
+	private static PreparedStatement DELETE_SHIPMENT_PLACEMENT;
+	private static PreparedStatement DELETE_ALL_FROM_SHIPMENT_PLACEMENTS;
+
+	/* Reconciliation of locker_shipments and shipment_lockers by token range, with checkpoints per range */
+	private static PreparedStatement SCAN_LOCKER_SHIPMENTS_BY_TOKEN;
+	private static PreparedStatement SCAN_SHIPMENT_LOCKERS_BY_TOKEN;
+	private static PreparedStatement SELECT_LOCKER_SHIPMENT_WRITETIME;
+	private static PreparedStatement SELECT_SHIPMENT_LOCKER_WRITETIME;
+	private static PreparedStatement REPAIR_LOCKER_SHIPMENT;
+	private static PreparedStatement REPAIR_SHIPMENT_LOCKER;
+	private static PreparedStatement DELETE_ORPHAN_LOCKER_SHIPMENT;
+	private static PreparedStatement DELETE_ORPHAN_SHIPMENT_LOCKER;
+	private static PreparedStatement BACKFILL_SHIPMENT_PLACEMENT;
+	private static PreparedStatement SELECT_RECONCILE_CHECKPOINTS;
+	private static PreparedStatement INSERT_RECONCILE_CHECKPOINT;
+
+	/* Sharded worker mode: membership of the reservation workers, each row kept alive by heartbeats */
+	private static PreparedStatement SELECT_RESERVATION_WORKERS;
+	private static PreparedStatement UPSERT_RESERVATION_WORKER;
+	private static PreparedStatement DELETE_RESERVATION_WORKER;
+
+	/* Layout of snapshot_changes, shared by every writer and reader */
+	private static final long CHANGE_BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final int CHANGE_SHARDS = 64;
+	/* default_time_to_live of snapshot_changes: a snapshot older than this cannot be caught up */
+	public static final Duration CHANGE_LOG_RETENTION = Duration.ofDays(2);
+
+	/* Migration writes in flight before waiting for them to complete */
+	private static final int MIGRATION_WINDOW = 64;
+
+	/* In-memory mirror of locker_occupancy, loaded on first use and reloaded once older than occupancyRefreshNanos */
+	private final Map<UUID, OccupancySummary> occupancy = new ConcurrentHashMap<>();
+	private volatile boolean occupancyLoaded = false;
+	private volatile long occupancyLoadedAtNanos;
+	private final long occupancyRefreshNanos;
+
+	/* Statements are prepared concurrently, each prepare(...) only sends the request */
 	private void prepareStatements() throws BackendException {
 		logger.debug("Preparing statements / queries");
+		List<PendingStatement> pending = new ArrayList<>();
 		try {
-			SELECT_ALL_FROM_LOCKERS = session.prepare("SELECT * FROM lockers;");
-			SELECT_ALL_FROM_SHIPMENTS = session.prepare("SELECT * FROM shipments;");
-			SELECT_ALL_FROM_LOCKER_SHIPMENTS = session.prepare("SELECT * FROM locker_shipments;");
-			SELECT_ALL_FROM_SHIPMENT_LOCKERS = session.prepare("SELECT * FROM shipment_lockers;");
-
-			SELECT_ALL_SHIPMENTS_FROM_LOCKER_BY_ID = session.prepare("SELECT * FROM locker_shipments WHERE locker_id=?;");
-			SELECT_ALL_LOCKERS_FROM_SHIPMENT_BY_ID = session.prepare("SELECT * FROM shipment_lockers WHERE shipment_id=?;");
-
-			SELECT_ONE_FROM_LOCKERS = session.prepare("SELECT * FROM lockers WHERE locker_id=?;");
-			SELECT_ONE_FROM_SHIPMENTS = session.prepare("SELECT * FROM shipments WHERE shipment_id=?;");
-			SELECT_ONE_FROM_LOCKER_SHIPMENTS = session.prepare("SELECT * FROM locker_shipments WHERE locker_id=? AND shipment_id=?;");
-			SELECT_ONE_FROM_SHIPMENT_LOCKERS = session.prepare("SELECT * FROM shipment_lockers WHERE shipment_id=? AND locker_id=?;");
-
-			INSERT_INTO_LOCKERS = session.prepare(
-					"INSERT INTO lockers (locker_id, locker_name, locker_boxes) VALUES (?, ?, ?);");
-			INSERT_INTO_SHIPMENTS = session.prepare(
+			prepare(pending, ps -> SELECT_ALL_FROM_LOCKERS = ps, ExecutionProfiles.SCAN, "SELECT * FROM lockers;");
+			prepare(pending, ps -> SELECT_ALL_FROM_SHIPMENTS = ps, ExecutionProfiles.SCAN, "SELECT * FROM shipments;");
+			prepare(pending, ps -> SELECT_ALL_FROM_LOCKER_SHIPMENTS = ps, ExecutionProfiles.SCAN, "SELECT * FROM locker_shipments;");
+			prepare(pending, ps -> SELECT_ALL_FROM_SHIPMENT_LOCKERS = ps, ExecutionProfiles.SCAN, "SELECT * FROM shipment_lockers;");
+
+			prepare(pending, ps -> SELECT_ALL_SHIPMENTS_FROM_LOCKER_BY_ID = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM locker_shipments WHERE locker_id=?;");
+			prepare(pending, ps -> SELECT_ALL_LOCKERS_FROM_SHIPMENT_BY_ID = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM shipment_lockers WHERE shipment_id=?;");
+
+			prepare(pending, ps -> SELECT_ONE_FROM_LOCKERS = ps, ExecutionProfiles.METADATA_READ, "SELECT * FROM lockers WHERE locker_id=?;");
+			prepare(pending, ps -> SELECT_ONE_FROM_SHIPMENTS = ps, ExecutionProfiles.METADATA_READ, "SELECT * FROM shipments WHERE shipment_id=?;");
+			prepare(pending, ps -> SELECT_ONE_FROM_LOCKER_SHIPMENTS = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM locker_shipments WHERE locker_id=? AND shipment_id=?;");
+			prepare(pending, ps -> SELECT_ONE_FROM_SHIPMENT_LOCKERS = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM shipment_lockers WHERE shipment_id=? AND locker_id=?;");
+
+			prepare(pending, ps -> INSERT_INTO_LOCKERS = ps, ExecutionProfiles.METADATA_WRITE,
+					"INSERT INTO lockers (locker_id, locker_name, locker_box_layout) VALUES (?, ?, ?);");
+			prepare(pending, ps -> INSERT_INTO_SHIPMENTS = ps, ExecutionProfiles.METADATA_WRITE,
 					"INSERT INTO shipments (shipment_id, shipment_name,box_size) VALUES (?, ?,?);");
-			INSERT_SHIPMENT_INTO_LOCKER = session.prepare(
+			prepare(pending, ps -> INSERT_SHIPMENT_INTO_LOCKER = ps, ExecutionProfiles.CLAIM_WRITE,
 					"BEGIN BATCH " +
 							"INSERT INTO locker_shipments (locker_id, shipment_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, ?);" +
 							"INSERT INTO shipment_lockers (shipment_id, locker_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, ?);" +
 							"APPLY BATCH;"
 			);
+			prepare(pending, ps -> CONFIRM_SHIPMENT_IN_LOCKER = ps, ExecutionProfiles.CLAIM_WRITE,
+					"BEGIN BATCH " +
+							"INSERT INTO locker_shipments (locker_id, shipment_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, 'CONFIRMED');" +
+							"INSERT INTO shipment_lockers (shipment_id, locker_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, 'CONFIRMED');" +
+							"INSERT INTO shipment_placements (shipment_id, locker_id, locker_box_index, confirmedAt) VALUES (?, ?, ?, ?);" +
+							"APPLY BATCH;"
+			);
+
+			prepare(pending, ps -> SELECT_SHIPMENTS_BY_IDS = ps, ExecutionProfiles.METADATA_READ, "SELECT * FROM shipments WHERE shipment_id IN ?;");
 
-			DELETE_ALL_FROM_LOCKERS = session.prepare("TRUNCATE lockers;");
-			DELETE_ALL_FROM_SHIPMENTS = session.prepare("TRUNCATE shipments;");
-			DELETE_ALL_FROM_LOCKER_SHIPMENTS = session.prepare("TRUNCATE locker_shipments;");
-			DELETE_ALL_FROM_SHIPMENT_LOCKERS = session.prepare("TRUNCATE shipment_lockers;");
+			prepare(pending, ps -> DELETE_ALL_FROM_LOCKERS = ps, ExecutionProfiles.ADMIN, "TRUNCATE lockers;");
+			prepare(pending, ps -> DELETE_ALL_FROM_SHIPMENTS = ps, ExecutionProfiles.ADMIN, "TRUNCATE shipments;");
+			prepare(pending, ps -> DELETE_ALL_FROM_LOCKER_SHIPMENTS = ps, ExecutionProfiles.ADMIN, "TRUNCATE locker_shipments;");
+			prepare(pending, ps -> DELETE_ALL_FROM_SHIPMENT_LOCKERS = ps, ExecutionProfiles.ADMIN, "TRUNCATE shipment_lockers;");
 
 			/* Initialize query for removing shipment-locker relationship atomically */
-			DELETE_SHIPMENT_FROM_LOCKER_BY_ID = session.prepare(
+			prepare(pending, ps -> DELETE_SHIPMENT_FROM_LOCKER_BY_ID = ps, ExecutionProfiles.CLAIM_WRITE,
 					"BEGIN BATCH " +
 							"DELETE FROM locker_shipments WHERE locker_id=? AND shipment_id=?; " +
 							"DELETE FROM shipment_lockers WHERE shipment_id=? AND locker_id=?; " +
 							"APPLY BATCH;"
 			);
-
+			prepare(pending, ps -> RELEASE_CONFIRMED_SHIPMENT = ps, ExecutionProfiles.CONDITIONAL_WRITE,
+					"DELETE FROM locker_shipments WHERE locker_id=? AND shipment_id=? IF status='CONFIRMED' AND locker_box_index=?;");
+			prepare(pending, ps -> RELEASE_CONFIRMED_SHIPMENT_LOCKER = ps, ExecutionProfiles.CONDITIONAL_WRITE,
+					"DELETE FROM shipment_lockers WHERE shipment_id=? AND locker_id=? IF status='CONFIRMED' AND locker_box_index=?;");
+
+			prepare(pending, ps -> SELECT_ALL_FROM_LOCKER_OCCUPANCY = ps, ExecutionProfiles.SCAN, "SELECT * FROM locker_occupancy;");
+			prepare(pending, ps -> UPDATE_LOCKER_OCCUPANCY = ps, ExecutionProfiles.COUNTER_WRITE,
+					"UPDATE locker_occupancy SET total = total + ?, occupied = occupied + ? WHERE locker_id=? AND box_size=?;");
+			prepare(pending, ps -> SELECT_LOCKER_OCCUPANCY_BY_ID = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM locker_occupancy WHERE locker_id=?;");
+			prepare(pending, ps -> DELETE_ALL_FROM_LOCKER_OCCUPANCY = ps, ExecutionProfiles.ADMIN, "TRUNCATE locker_occupancy;");
+
+			prepare(pending, ps -> INSERT_SNAPSHOT_CHANGE = ps, ExecutionProfiles.CLAIM_WRITE,
+					"INSERT INTO snapshot_changes (bucket, shard, changed_at, locker_id, shipment_ids) VALUES (?, ?, ?, ?, ?);");
+			prepare(pending, ps -> SELECT_SNAPSHOT_CHANGES = ps, ExecutionProfiles.PARTITION_READ,
+					"SELECT locker_id, shipment_ids FROM snapshot_changes WHERE bucket=? AND shard=?;");
+			prepare(pending, ps -> DELETE_ALL_FROM_SNAPSHOT_CHANGES = ps, ExecutionProfiles.ADMIN, "TRUNCATE snapshot_changes;");
+
+			prepare(pending, ps -> SELECT_LOCKER_BOXES_FOR_MIGRATION = ps, ExecutionProfiles.SCAN,
+					"SELECT locker_id, locker_boxes, locker_box_layout FROM lockers;");
+			prepare(pending, ps -> MIGRATE_LOCKER_BOXES = ps, ExecutionProfiles.METADATA_WRITE,
+					"UPDATE lockers SET locker_box_layout=?, locker_boxes=null WHERE locker_id=?;");
+
+			prepare(pending, ps -> SELECT_SHIPMENT_PLACEMENT = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM shipment_placements WHERE shipment_id=?;");
+			prepare(pending, ps -> UPSERT_SHIPMENT_PLACEMENT = ps, ExecutionProfiles.CLAIM_WRITE,
+					"INSERT INTO shipment_placements (shipment_id, locker_id, locker_box_index, confirmedAt) VALUES (?, ?, ?, ?);");
+			prepare(pending, ps -> SELECT_SHIPMENT_PLACEMENT_WRITETIME = ps, ExecutionProfiles.PARTITION_READ,
+					"SELECT locker_id, WRITETIME(locker_id) AS written FROM shipment_placements WHERE shipment_id=?;");
+			prepare(pending, ps -> DELETE_SHIPMENT_PLACEMENT = ps, ExecutionProfiles.CLAIM_WRITE,
+					"DELETE FROM shipment_placements USING TIMESTAMP ? WHERE shipment_id=?;");
+			prepare(pending, ps -> DELETE_ALL_FROM_SHIPMENT_PLACEMENTS = ps, ExecutionProfiles.ADMIN, "TRUNCATE shipment_placements;");
+
+			prepare(pending, ps -> SCAN_LOCKER_SHIPMENTS_BY_TOKEN = ps, ExecutionProfiles.SCAN,
+					"SELECT locker_id, shipment_id, locker_box_index, addedAt, status, WRITETIME(status) AS written FROM locker_shipments " +
+							"WHERE token(locker_id) > ? AND token(locker_id) <= ?;");
+			prepare(pending, ps -> SCAN_SHIPMENT_LOCKERS_BY_TOKEN = ps, ExecutionProfiles.SCAN,
+					"SELECT locker_id, shipment_id, locker_box_index, addedAt, status, WRITETIME(status) AS written FROM shipment_lockers " +
+							"WHERE token(shipment_id) > ? AND token(shipment_id) <= ?;");
+			prepare(pending, ps -> SELECT_LOCKER_SHIPMENT_WRITETIME = ps, ExecutionProfiles.PARTITION_READ,
+					"SELECT locker_id, shipment_id, locker_box_index, addedAt, status, WRITETIME(status) AS written FROM locker_shipments " +
+							"WHERE locker_id=? AND shipment_id=?;");
+			prepare(pending, ps -> SELECT_SHIPMENT_LOCKER_WRITETIME = ps, ExecutionProfiles.PARTITION_READ,
+					"SELECT locker_id, shipment_id, locker_box_index, addedAt, status, WRITETIME(status) AS written FROM shipment_lockers " +
+							"WHERE shipment_id=? AND locker_id=?;");
+			prepare(pending, ps -> REPAIR_LOCKER_SHIPMENT = ps, ExecutionProfiles.CLAIM_WRITE,
+					"INSERT INTO locker_shipments (locker_id, shipment_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?;");
+			prepare(pending, ps -> REPAIR_SHIPMENT_LOCKER = ps, ExecutionProfiles.CLAIM_WRITE,
+					"INSERT INTO shipment_lockers (shipment_id, locker_id, locker_box_index, addedAt, status) VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?;");
+			prepare(pending, ps -> DELETE_ORPHAN_LOCKER_SHIPMENT = ps, ExecutionProfiles.CLAIM_WRITE,
+					"DELETE FROM locker_shipments USING TIMESTAMP ? WHERE locker_id=? AND shipment_id=?;");
+			prepare(pending, ps -> DELETE_ORPHAN_SHIPMENT_LOCKER = ps, ExecutionProfiles.CLAIM_WRITE,
+					"DELETE FROM shipment_lockers USING TIMESTAMP ? WHERE shipment_id=? AND locker_id=?;");
+			prepare(pending, ps -> BACKFILL_SHIPMENT_PLACEMENT = ps, ExecutionProfiles.CLAIM_WRITE,
+					"INSERT INTO shipment_placements (shipment_id, locker_id, locker_box_index, confirmedAt) VALUES (?, ?, ?, ?) USING TIMESTAMP ?;");
+			prepare(pending, ps -> SELECT_RECONCILE_CHECKPOINTS = ps, ExecutionProfiles.PARTITION_READ,
+					"SELECT range_start, range_end FROM reconcile_checkpoints WHERE job=?;");
+			prepare(pending, ps -> INSERT_RECONCILE_CHECKPOINT = ps, ExecutionProfiles.METADATA_WRITE,
+					"INSERT INTO reconcile_checkpoints (job, range_start, range_end, rows_scanned, rows_repaired, finished_at) VALUES (?, ?, ?, ?, ?, ?);");
+
+			prepare(pending, ps -> SELECT_RESERVATION_WORKERS = ps, ExecutionProfiles.PARTITION_READ, "SELECT * FROM reservation_workers WHERE ring=?;");
+			prepare(pending, ps -> UPSERT_RESERVATION_WORKER = ps, ExecutionProfiles.METADATA_WRITE,
+					"INSERT INTO reservation_workers (ring, worker_id, endpoint, joined_at) VALUES (?, ?, ?, ?) USING TTL ?;");
+			prepare(pending, ps -> DELETE_RESERVATION_WORKER = ps, ExecutionProfiles.METADATA_WRITE,
+					"DELETE FROM reservation_workers WHERE ring=? AND worker_id=?;");
+
+			for (PendingStatement statement : pending) {
+				PreparedStatement ps = statement.future.get(PREPARE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				profiles.register(ps, statement.profile);
+				statement.target.accept(ps);
+			}
+		} catch (ExecutionException e) {
+			throw new BackendException("Could not prepare statements. " + e.getCause().getMessage() + ".", e);
 		} catch (Exception e) {
 			throw new BackendException("Could not prepare statements. " + e.getMessage() + ".", e);
 		}
 
+		registerStatementNames();
 		logger.debug("Statements and queries prepared");
 	}
 
+	/* Statement names in the slow statement log are the names of the fields holding them */
+	private void registerStatementNames() throws BackendException {
+		try {
+			for (Field field : BackendSession.class.getDeclaredFields()) {
+				if (field.getType() == PreparedStatement.class && Modifier.isStatic(field.getModifiers())) {
+					slowLog.register((PreparedStatement) field.get(null), field.getName());
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new BackendException("Could not register statement names. " + e.getMessage() + ".", e);
+		}
+	}
+
+	private static final class PendingStatement {
+		final ListenableFuture<PreparedStatement> future;
+		final Consumer<PreparedStatement> target;
+		final String profile;
+
+		PendingStatement(ListenableFuture<PreparedStatement> future, Consumer<PreparedStatement> target, String profile) {
+			this.future = future;
+			this.target = target;
+			this.profile = profile;
+		}
+	}
+
+	private void prepare(List<PendingStatement> pending, Consumer<PreparedStatement> target, String profile, String query) {
+		pending.add(new PendingStatement(session.prepareAsync(query), target, profile));
+	}
+
+	private BoundStatement statement(PreparedStatement ps) {
+		BoundStatement bs = profiles.bind(ps);
+		if (tracingReservation.get()) {
+			bs.enableTracing();
+		}
+		return bs;
+	}
+
+	private ResultSet execute(Statement statement) {
+		ResultSet rs = session.execute(statement);
+		logTrace(statement, rs);
+		return rs;
+	}
+
+	private void logTrace(Statement statement, ResultSet rs) {
+		if (statement.isTracing() && rs.getExecutionInfo().getQueryTrace() != null) {
+			logger.info("Trace " + rs.getExecutionInfo().getQueryTrace().getTraceId() + " for " + slowLog.nameOf(statement)
+					+ " (see system_traces.sessions / system_traces.events)");
+		}
+	}
+
 	/* CRUD operations */
 
 	/* select */
 
 	public List<Locker> selectAllLockers() throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ALL_FROM_LOCKERS);
+		SnapshotStore store = warmStore();
+		if (store != null) {
+			return store.getAllLockers();
+		}
+
+		BoundStatement bs = statement(SELECT_ALL_FROM_LOCKERS);
 		Mapper<Locker> mapper = manager.mapper(Locker.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
@@ -142,13 +443,18 @@ public class BackendSession {
 	}
 
 	public List<Shipment> selectAllShipments() throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ALL_FROM_SHIPMENTS);
+		SnapshotStore store = warmStore();
+		if (store != null) {
+			return store.getAllShipments();
+		}
+
+		BoundStatement bs = statement(SELECT_ALL_FROM_SHIPMENTS);
 		Mapper<Shipment> mapper = manager.mapper(Shipment.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
@@ -157,14 +463,30 @@ public class BackendSession {
 	}
 
 	public List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ALL_SHIPMENTS_FROM_LOCKER_BY_ID);
+		BoundStatement bs = statement(SELECT_ALL_SHIPMENTS_FROM_LOCKER_BY_ID);
 		bs.bind(lockerId);
 		Mapper<LockerShipment> mapper = manager.mapper(LockerShipment.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return mapper.map(rs).all();
+	}
+
+	public List<ShipmentLocker> selectAllLockersFromShipmentById(UUID shipmentId) throws BackendException {
+		BoundStatement bs = statement(SELECT_ALL_LOCKERS_FROM_SHIPMENT_BY_ID);
+		bs.bind(shipmentId);
+		Mapper<ShipmentLocker> mapper = manager.mapper(ShipmentLocker.class);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
@@ -172,31 +494,112 @@ public class BackendSession {
 		return mapper.map(rs).all();
 	}
 
+	/* Lockers and shipments never change once written: after a warm start they are served from the snapshot, misses read through */
 	public Locker selectLocker(UUID lockerId) throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ONE_FROM_LOCKERS);
+		SnapshotStore store = warm;
+		if (store != null) {
+			Locker locker = store.getLocker(lockerId);
+			if (locker != null) {
+				return locker;
+			}
+		}
+
+		BoundStatement bs = statement(SELECT_ONE_FROM_LOCKERS);
 		bs.bind(lockerId);
 		Mapper<Locker> mapper = manager.mapper(Locker.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
 
-		return mapper.map(rs).one();
+		Locker locker = mapper.map(rs).one();
+		if (store != null && locker != null) {
+			store.putLocker(locker);
+		}
+		return locker;
 	}
 
 	public Shipment selectShipment(UUID shipmentId) throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ONE_FROM_SHIPMENTS);
+		SnapshotStore store = warm;
+		if (store != null) {
+			Shipment shipment = store.getShipment(shipmentId);
+			if (shipment != null) {
+				return shipment;
+			}
+		}
+
+		BoundStatement bs = statement(SELECT_ONE_FROM_SHIPMENTS);
 		bs.bind(shipmentId);
 		Mapper<Shipment> mapper = manager.mapper(Shipment.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		Shipment shipment = mapper.map(rs).one();
+		if (store != null && shipment != null) {
+			store.putShipment(shipment);
+		}
+		return shipment;
+	}
+
+	public List<Shipment> selectShipments(List<UUID> shipmentIds) throws BackendException {
+		SnapshotStore store = warm;
+		List<Shipment> shipments = new ArrayList<>();
+		List<UUID> missing = shipmentIds;
+		if (store != null) {
+			missing = new ArrayList<>();
+			for (UUID shipmentId : shipmentIds) {
+				Shipment shipment = store.getShipment(shipmentId);
+				if (shipment != null) {
+					shipments.add(shipment);
+				} else {
+					missing.add(shipmentId);
+				}
+			}
+			if (missing.isEmpty()) {
+				return shipments;
+			}
+		}
+
+		BoundStatement bs = statement(SELECT_SHIPMENTS_BY_IDS);
+		bs.bind(missing);
+		Mapper<Shipment> mapper = manager.mapper(Shipment.class);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		for (Shipment shipment : mapper.map(rs)) {
+			if (store != null) {
+				store.putShipment(shipment);
+			}
+			shipments.add(shipment);
+		}
+		return shipments;
+	}
+
+	public LockerShipment selectLockerShipment(UUID lockerId, UUID shipmentId) throws BackendException {
+		BoundStatement bs = statement(SELECT_ONE_FROM_LOCKER_SHIPMENTS);
+		bs.bind(lockerId, shipmentId);
+		Mapper<LockerShipment> mapper = manager.mapper(LockerShipment.class);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
@@ -205,14 +608,14 @@ public class BackendSession {
 	}
 
 	public ShipmentLocker selectShipmentLocker(UUID shipmentId, UUID lockerId) throws BackendException {
-		BoundStatement bs = new BoundStatement(SELECT_ONE_FROM_SHIPMENT_LOCKERS);
+		BoundStatement bs = statement(SELECT_ONE_FROM_SHIPMENT_LOCKERS);
 		bs.bind(shipmentId, lockerId);
 		Mapper<ShipmentLocker> mapper = manager.mapper(ShipmentLocker.class);
 
 		ResultSet rs = null;
 
 		try {
-			rs = session.execute(bs);
+			rs = execute(bs);
 		} catch(Exception e) {
 			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
 		}
@@ -220,159 +623,991 @@ public class BackendSession {
 		return mapper.map(rs).one();
 	}
 
+	/* scan - lazily paged, rows are fetched page by page while iterating */
+
+	public Iterable<Locker> scanAllLockers() throws BackendException {
+		return scan(statement(SELECT_ALL_FROM_LOCKERS), Locker.class);
+	}
+
+	public Iterable<Shipment> scanAllShipments() throws BackendException {
+		return scan(statement(SELECT_ALL_FROM_SHIPMENTS), Shipment.class);
+	}
+
+	public Iterable<LockerShipment> scanAllLockerShipments() throws BackendException {
+		return scan(statement(SELECT_ALL_FROM_LOCKER_SHIPMENTS), LockerShipment.class);
+	}
+
+	public Iterable<ShipmentLocker> scanAllShipmentLockers() throws BackendException {
+		return scan(statement(SELECT_ALL_FROM_SHIPMENT_LOCKERS), ShipmentLocker.class);
+	}
+
+
+	private <T> Iterable<T> scan(BoundStatement bs, Class<T> entityClass) throws BackendException {
+		Mapper<T> mapper = manager.mapper(entityClass);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return mapper.map(rs);
+	}
+
+	/* warm start */
+
+	/*
+	 * Serve lockers and shipments from the snapshot from now on, after catching it up with the
+	 * change log. Status rows are still read from the cluster, reservations need their current state.
+	 */
+	public long useSnapshot(SnapshotStore store) throws BackendException {
+		if (!changeLog) {
+			throw new BackendException("Could not use snapshot. Writes are not recorded in snapshot_changes, set snapshot.change_log=true in every writer.");
+		}
+		long applied = store.catchUp(this);
+		warm = store;
+		return applied;
+	}
+
+	/* The warm snapshot for whole-table reads, caught up first once its copy is older than snapshot.catch_up_ms */
+	private SnapshotStore warmStore() throws BackendException {
+		SnapshotStore store = warm;
+		if (store != null && !store.catchUpIfOlderThan(this, warmCatchUpNanos)) {
+			logger.warn("Snapshot fell behind the change log retention, lockers and shipments are read from the cluster again");
+			warm = null;
+			return null;
+		}
+		return store;
+	}
+
+	/*
+	 * Records the keys a write is about to touch, when snapshot.change_log is on. Sent alongside the
+	 * write and never awaited: catch-up looks back 30 seconds before its last run, so a log row that
+	 * lands a little after its write is still read. A lost log row only means catch-up misses that
+	 * change; it is logged and counted in getChangeLogFailures().
+	 */
+	private void logChange(UUID lockerId, Collection<UUID> shipmentIds) {
+		if (!changeLog) {
+			return;
+		}
+		UUID key = lockerId != null ? lockerId : shipmentIds.iterator().next();
+		long now = System.currentTimeMillis();
+		BoundStatement bs = statement(INSERT_SNAPSHOT_CHANGE);
+		bs.bind(Instant.ofEpochMilli(now - now % CHANGE_BUCKET_MILLIS), (byte) Math.floorMod(key.hashCode(), CHANGE_SHARDS),
+				UUIDs.timeBased(), lockerId, new HashSet<>(shipmentIds));
+		Futures.addCallback(session.executeAsync(bs), new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet rs) {
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				changeLogFailures.incrementAndGet();
+				logger.warn("Could not record change of locker " + lockerId + ", shipments " + shipmentIds + ": " + t.getMessage());
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	public long getChangeLogFailures() {
+		return changeLogFailures.get();
+	}
+
+	/* Keys changed between from and to, rounded out to whole buckets; the shards of a bucket are read in parallel */
+	public ChangedKeys selectChanges(Instant from, Instant to) throws BackendException {
+		ChangedKeys keys = new ChangedKeys();
+		for (long bucket = from.toEpochMilli() - Math.floorMod(from.toEpochMilli(), CHANGE_BUCKET_MILLIS);
+			 bucket <= to.toEpochMilli(); bucket += CHANGE_BUCKET_MILLIS) {
+			List<ResultSetFuture> futures = new ArrayList<>();
+			for (int shard = 0; shard < CHANGE_SHARDS; shard++) {
+				BoundStatement bs = statement(SELECT_SNAPSHOT_CHANGES);
+				bs.bind(Instant.ofEpochMilli(bucket), (byte) shard);
+				futures.add(session.executeAsync(bs));
+			}
+
+			try {
+				for (ResultSetFuture future : futures) {
+					for (Row row : future.getUninterruptibly()) {
+						keys.add(row.getUUID("locker_id"), row.getSet("shipment_ids", UUID.class));
+					}
+				}
+			} catch(Exception e) {
+				throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+			}
+		}
+		return keys;
+	}
+
 	/* insert */
 
 	public void insertLocker(String lockerName, Byte... locker_boxes) throws BackendException {
-		UUID newUUID = UUID.randomUUID();
+		for (Byte size : locker_boxes) {
+			if (!OccupancySummary.isValidBoxSize(size)) {
+				throw new BackendException("Could not insert locker. Box size " + size + " is not between 1 and " + OccupancySummary.MAX_BOX_SIZE + ".");
+			}
+		}
+		enter();
+		try {
+			UUID newUUID = UUID.randomUUID();
+
+			BoundStatement bs = statement(INSERT_INTO_LOCKERS);
+			byte[] layout = new byte[locker_boxes.length];
+			for (int i = 0; i < layout.length; i++) {
+				layout[i] = locker_boxes[i];
+			}
+			bs.bind(newUUID, lockerName, layout);
+
+			logChange(newUUID, Collections.emptySet());
+			try {
+				execute(bs);
+			} catch (Exception e) {
+				throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+			}
+
+			SnapshotStore store = warm;
+			if (store != null) {
+				Locker locker = new Locker();
+				locker.setLocker_id(newUUID);
+				locker.setLocker_name(lockerName);
+				locker.setLocker_box_layout(layout);
+				store.putLocker(locker);
+			}
+
+			Map<Byte, Long> sizeCounts = Arrays.stream(locker_boxes)
+					.collect(Collectors.groupingBy(size -> size, Collectors.counting()));
+			for (Map.Entry<Byte, Long> entry : sizeCounts.entrySet()) {
+				updateOccupancy(newUUID, entry.getKey(), entry.getValue(), 0);
+			}
+
+			logger.debug("Locker " + lockerName + " inserted with id: " + newUUID);
+		} finally {
+			exit();
+		}
+	}
+
+	public void insertShipment(String shipmentName, Byte boxSize) throws BackendException {
+		if (!OccupancySummary.isValidBoxSize(boxSize)) {
+			throw new BackendException("Could not insert shipment. Box size " + boxSize + " is not between 1 and " + OccupancySummary.MAX_BOX_SIZE + ".");
+		}
+		enter();
+		try {
+			UUID newUUID = UUID.randomUUID();
+
+			BoundStatement bs = statement(INSERT_INTO_SHIPMENTS);
+			bs.bind(newUUID, shipmentName,boxSize);
+
+			logChange(null, Collections.singleton(newUUID));
+			try {
+				execute(bs);
+			} catch (Exception e) {
+				throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+			}
+
+			SnapshotStore store = warm;
+			if (store != null) {
+				Shipment shipment = new Shipment();
+				shipment.setShipment_id(newUUID);
+				shipment.setShipment_name(shipmentName);
+				shipment.setBox_size(boxSize);
+				store.putShipment(shipment);
+			}
+
+			logger.debug("Shipment " + shipmentName + " inserted with id: " + newUUID+"size: "+boxSize);
+		} finally {
+			exit();
+		}
+	}
+
+	public ReservationResult insertShipmentIntoLocker(UUID locker_id, UUID  shipment_id, Instant timestamp) throws BackendException {
+		enter();
+		try {
+			AdmissionController.Permit permit = admission.tryAcquire(locker_id);
+			if (permit == null) {
+				return ReservationResult.OVERLOADED;
+			}
+
+			boolean traced = sampleTrace();
+			try (permit) {
+				ReservationResult result = protocol.placeShipment(locker_id, shipment_id, timestamp);
+				permit.markSuccess();
+				if (traced) {
+					logger.info("Traced reservation of shipment " + shipment_id + " into locker " + locker_id + ": " + result);
+				}
+				return result;
+			} finally {
+				tracingReservation.remove();
+			}
+		} finally {
+			exit();
+		}
+	}
+
+	private boolean sampleTrace() {
+		double rate = traceSampleRate;
+		boolean traced = rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+		tracingReservation.set(traced);
+		return traced;
+	}
+
+	/* Place many shipments into one locker: locker state is read once, claims are packed best-fit and written in batches */
+	public Map<UUID, ReservationResult> assignShipmentsToLocker(UUID lockerId, List<UUID> shipmentIds) throws BackendException {
+		enter();
+		try {
+			Map<UUID, ReservationResult> results = new LinkedHashMap<>();
+			for (UUID shipmentId : shipmentIds) {
+				results.put(shipmentId, ReservationResult.NO_FREE_BOX);
+			}
+
+			AdmissionController.Permit permit = admission.tryAcquire(lockerId);
+			if (permit == null) {
+				results.replaceAll((id, result) -> ReservationResult.OVERLOADED);
+				return results;
+			}
+
+			boolean traced = sampleTrace();
+			try (permit) {
+				protocol.assignShipments(lockerId, results);
+				permit.markSuccess();
+				if (traced) {
+					logger.info("Traced assignment of " + shipmentIds.size() + " shipments into locker " + lockerId);
+				}
+			} finally {
+				tracingReservation.remove();
+			}
+
+			return results;
+		} finally {
+			exit();
+		}
+	}
 
-		BoundStatement bs = new BoundStatement(INSERT_INTO_LOCKERS);
-		bs.bind(newUUID, lockerName, Arrays.asList(locker_boxes));
+	/* One claim as a logged batch of both tables; the CONFIRMED write also carries the shipment_placements row */
+	private void writeClaim(UUID lockerId, UUID shipmentId, int index, Instant timestamp, String status) throws BackendException {
+		BoundStatement bs = claimStatement(lockerId, shipmentId, index, timestamp, status);
 
 		try {
-			session.execute(bs);
+			execute(bs);
 		} catch (Exception e) {
-			throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+			throw new BackendException("Could not perform insert operation. " + e.getMessage() + ".", e);
 		}
 
-		logger.info("Locker " + lockerName + " inserted with id: " + newUUID);
+		if ("CONFIRMED".equals(status)) {
+			placements.put(placementOf(shipmentId, lockerId, index, timestamp));
+		}
 	}
 
-	public void insertShipment(String shipmentName, Byte boxSize) throws BackendException {
-		UUID newUUID = UUID.randomUUID();
+	/*
+	 * Each claim is its own logged batch of the locker_shipments and shipment_lockers rows (plus the
+	 * shipment_placements row when CONFIRMED), the same statement writeClaim sends, so the two mirror
+	 * tables never disagree about a claim. The batches of one call are sent together and share a round
+	 * trip; the call fails if any of them fails.
+	 */
+	private void writeClaims(UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status,
+							 Map<UUID, Integer> otherClaims, String otherStatus) throws BackendException {
+		List<Statement> statements = new ArrayList<>();
+		addClaims(statements, lockerId, claims, timestamp, status);
+		addClaims(statements, lockerId, otherClaims, timestamp, otherStatus);
+		if (statements.isEmpty()) {
+			return;
+		}
+
+		List<ResultSetFuture> futures = new ArrayList<>();
+		for (Statement statement : statements) {
+			futures.add(session.executeAsync(statement));
+		}
+		Exception failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				logTrace(statements.get(i), futures.get(i).getUninterruptibly());
+			} catch (Exception e) {
+				failure = failure == null ? e : failure;
+			}
+		}
+		if (failure != null) {
+			throw new BackendException("Could not perform insert operation. " + failure.getMessage() + ".", failure);
+		}
+		cachePlacements(lockerId, claims, timestamp, status);
+		cachePlacements(lockerId, otherClaims, timestamp, otherStatus);
+	}
 
-		BoundStatement bs = new BoundStatement(INSERT_INTO_SHIPMENTS);
-		bs.bind(newUUID, shipmentName,boxSize);
+	private void addClaims(List<Statement> statements, UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status) {
+		for (Map.Entry<UUID, Integer> claim : claims.entrySet()) {
+			statements.add(claimStatement(lockerId, claim.getKey(), claim.getValue(), timestamp, status));
+		}
+	}
+
+	private BoundStatement claimStatement(UUID lockerId, UUID shipmentId, int index, Instant timestamp, String status) {
+		BoundStatement bs;
+		if ("CONFIRMED".equals(status)) {
+			bs = statement(CONFIRM_SHIPMENT_IN_LOCKER);
+			bs.bind(lockerId, shipmentId, index, timestamp, shipmentId, lockerId, index, timestamp, shipmentId, lockerId, index, timestamp);
+		} else {
+			bs = statement(INSERT_SHIPMENT_INTO_LOCKER);
+			bs.bind(lockerId, shipmentId, index, timestamp, status, shipmentId, lockerId, index, timestamp, status);
+		}
+		return bs;
+	}
+
+	private void cachePlacements(UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status) {
+		if ("CONFIRMED".equals(status)) {
+			for (Map.Entry<UUID, Integer> claim : claims.entrySet()) {
+				placements.put(placementOf(claim.getKey(), lockerId, claim.getValue(), timestamp));
+			}
+		}
+	}
+
+	/* ReservationProtocol's reads and writes, served by this session */
+	private final class SessionClaimStore implements ClaimStore {
+
+		@Override
+		public Locker selectLocker(UUID lockerId) throws BackendException {
+			return BackendSession.this.selectLocker(lockerId);
+		}
+
+		@Override
+		public Shipment selectShipment(UUID shipmentId) throws BackendException {
+			return BackendSession.this.selectShipment(shipmentId);
+		}
+
+		@Override
+		public List<Shipment> selectShipments(List<UUID> shipmentIds) throws BackendException {
+			return BackendSession.this.selectShipments(shipmentIds);
+		}
+
+		@Override
+		public List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) throws BackendException {
+			return BackendSession.this.selectAllShipmentsFromLockerById(lockerId);
+		}
+
+		@Override
+		public ShipmentLocker selectShipmentLocker(UUID shipmentId, UUID lockerId) throws BackendException {
+			return BackendSession.this.selectShipmentLocker(shipmentId, lockerId);
+		}
+
+		@Override
+		public void logChange(UUID lockerId, Collection<UUID> shipmentIds) {
+			BackendSession.this.logChange(lockerId, shipmentIds);
+		}
+
+		@Override
+		public void writeClaim(UUID lockerId, UUID shipmentId, int index, Instant timestamp, String status) throws BackendException {
+			BackendSession.this.writeClaim(lockerId, shipmentId, index, timestamp, status);
+		}
+
+		@Override
+		public void writeClaims(UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status,
+								Map<UUID, Integer> otherClaims, String otherStatus) throws BackendException {
+			BackendSession.this.writeClaims(lockerId, claims, timestamp, status, otherClaims, otherStatus);
+		}
+
+		@Override
+		public void updateOccupancy(UUID lockerId, Byte boxSize, long totalDelta, long occupiedDelta) throws BackendException {
+			BackendSession.this.updateOccupancy(lockerId, boxSize, totalDelta, occupiedDelta);
+		}
+	}
+
+	/* placements */
+
+	/*
+	 * Locker currently holding the shipment, or null when it is not placed. Reads the single
+	 * shipment_placements row instead of the shipment_lockers partition with every attempt, and is
+	 * served from the near cache when possible. Shipments confirmed before shipment_placements existed
+	 * are found in shipment_lockers once and the row is written for them.
+	 */
+	public ShipmentPlacement findConfirmedLocker(UUID shipmentId) throws BackendException {
+		return placements.get(shipmentId, this::loadPlacement);
+	}
+
+	private ShipmentPlacement selectPlacement(UUID shipmentId) throws BackendException {
+		BoundStatement bs = statement(SELECT_SHIPMENT_PLACEMENT);
+		bs.bind(shipmentId);
+		Mapper<ShipmentPlacement> mapper = manager.mapper(ShipmentPlacement.class);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return mapper.map(rs).one();
+	}
+
+	private ShipmentPlacement loadPlacement(UUID shipmentId) throws BackendException {
+		ShipmentPlacement placement = selectPlacement(shipmentId);
+		if (placement != null || !legacyPlacementLookup) {
+			return placement;
+		}
+
+		for (ShipmentLocker shipmentLocker : selectAllLockersFromShipmentById(shipmentId)) {
+			if ("CONFIRMED".equals(shipmentLocker.getStatus())) {
+				placement = placementOf(shipmentId, shipmentLocker.getLocker_id(), shipmentLocker.getLocker_box_index(), shipmentLocker.getAddedAt());
+				writePlacement(placement);
+				return placement;
+			}
+		}
+		return null;
+	}
+
+	private void writePlacement(ShipmentPlacement placement) throws BackendException {
+		BoundStatement bs = statement(UPSERT_SHIPMENT_PLACEMENT);
+		bs.bind(placement.getShipment_id(), placement.getLocker_id(), placement.getLocker_box_index(), placement.getConfirmedAt());
 
 		try {
-			session.execute(bs);
+			execute(bs);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
 		}
+		placements.put(placement);
+	}
+
+	/* Drops the placement only if it still points at this locker */
+	/*
+	 * The delete carries the write time of the placement it read: it removes that placement, while a
+	 * confirm written meanwhile by another worker has a later write time and survives it.
+	 */
+	private void deletePlacement(UUID shipmentId, UUID lockerId) throws BackendException {
+		placements.invalidate(shipmentId);
+		BoundStatement select = statement(SELECT_SHIPMENT_PLACEMENT_WRITETIME);
+		select.bind(shipmentId);
+
+		Row placement;
+
+		try {
+			placement = execute(select).one();
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+		if (placement == null || !lockerId.equals(placement.getUUID("locker_id"))) {
+			return;
+		}
+
+		BoundStatement bs = statement(DELETE_SHIPMENT_PLACEMENT);
+		bs.bind(placement.getLong("written"), shipmentId);
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
+		}
+		placements.invalidate(shipmentId);
+	}
+
+	private static ShipmentPlacement placementOf(UUID shipmentId, UUID lockerId, int boxIndex, Instant confirmedAt) {
+		ShipmentPlacement placement = new ShipmentPlacement();
+		placement.setShipment_id(shipmentId);
+		placement.setLocker_id(lockerId);
+		placement.setLocker_box_index(boxIndex);
+		placement.setConfirmedAt(confirmedAt);
+		return placement;
+	}
+
+	public PlacementCache getPlacementCache() {
+		return placements;
+	}
+
+	public ReservationResult insertShipmentIntoLocker(UUID locker_id, UUID  shipment_id) throws BackendException{
+		return insertShipmentIntoLocker(locker_id,shipment_id,Instant.now());
+	}
+
+	public AdmissionController getAdmissionController() {
+		return admission;
+	}
+
+	public ExecutionProfiles getExecutionProfiles() {
+		return profiles;
+	}
+
+	public SlowStatementLog getSlowStatementLog() {
+		return slowLog;
+	}
+
+	public double getTraceSampleRate() {
+		return traceSampleRate;
+	}
+
+	public void setTraceSampleRate(double traceSampleRate) {
+		this.traceSampleRate = Math.max(0, Math.min(1, traceSampleRate));
+		logger.info("Reservation trace sample rate set to " + this.traceSampleRate);
+	}
+
+	/*
+	 * Remove a shipment from a locker; a CONFIRMED placement frees its box in the occupancy summary.
+	 * The CONFIRMED rows are removed by two conditional deletes, locker_shipments first. Only the caller
+	 * whose shipment_lockers delete applies decrements occupancy and drops the placement, so the box is
+	 * freed once however often the release is retried. A release that failed after the locker_shipments
+	 * delete left the CONFIRMED shipment_lockers row behind, and calling it again finishes from that row.
+	 */
+	public boolean releaseShipmentFromLocker(UUID locker_id, UUID shipment_id) throws BackendException {
+		enter();
+		try {
+			LockerShipment lockerShipment = selectLockerShipment(locker_id, shipment_id);
+			if (lockerShipment != null && "CONFIRMED".equals(lockerShipment.getStatus())) {
+				logChange(locker_id, Collections.singleton(shipment_id));
+				/* Not applied: a concurrent release removed the row, or it is no longer this placement */
+				if (!deleteConfirmed(RELEASE_CONFIRMED_SHIPMENT, locker_id, shipment_id, lockerShipment.getLocker_box_index())) {
+					return false;
+				}
+				return finishRelease(locker_id, shipment_id, lockerShipment.getLocker_box_index());
+			}
+
+			ShipmentLocker shipmentLocker = selectShipmentLocker(shipment_id, locker_id);
+			if (lockerShipment == null && shipmentLocker == null) {
+				return false;
+			}
+			logChange(locker_id, Collections.singleton(shipment_id));
+			if (lockerShipment == null && "CONFIRMED".equals(shipmentLocker.getStatus())) {
+				return finishRelease(locker_id, shipment_id, shipmentLocker.getLocker_box_index());
+			}
+
+			BoundStatement bs = statement(DELETE_SHIPMENT_FROM_LOCKER_BY_ID);
+			bs.bind(locker_id, shipment_id, shipment_id, locker_id);
+
+			try {
+				execute(bs);
+			} catch (Exception e) {
+				throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
+			}
+
+			logger.debug("Shipment " + shipment_id + " released from locker " + locker_id);
+			return true;
+		} finally {
+			exit();
+		}
+	}
+
+	/*
+	 * Second half of a CONFIRMED release, after its locker_shipments row is gone. Everything that can be
+	 * repeated runs before the shipment_lockers delete; after it only the counter update is left, and a
+	 * failed counter update is corrected by rebuildOccupancy().
+	 */
+	private boolean finishRelease(UUID locker_id, UUID shipment_id, Integer boxIndex) throws BackendException {
+		deletePlacement(shipment_id, locker_id);
+		Locker locker = selectLocker(locker_id);
+
+		if (!deleteConfirmed(RELEASE_CONFIRMED_SHIPMENT_LOCKER, shipment_id, locker_id, boxIndex)) {
+			return false;
+		}
+
+		byte[] boxes = locker == null ? new byte[0] : locker.getBoxes();
+		if (boxIndex != null && boxIndex >= 0 && boxIndex < boxes.length) {
+			updateOccupancy(locker_id, boxes[boxIndex], 0, -1);
+		} else {
+			logger.warn("Released shipment " + shipment_id + " from box " + boxIndex + " missing in locker " + locker_id + ", occupancy not updated");
+		}
+
+		logger.debug("Shipment " + shipment_id + " released from locker " + locker_id);
+		return true;
+	}
+
+	/* Conditional delete of a CONFIRMED row; true only for the caller whose delete applied */
+	private boolean deleteConfirmed(PreparedStatement ps, UUID partitionKey, UUID clusteringKey, Integer boxIndex) throws BackendException {
+		BoundStatement bs = statement(ps);
+		bs.bind(partitionKey, clusteringKey, boxIndex);
+
+		try {
+			return execute(bs).wasApplied();
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
+		}
+	}
+
+	/* occupancy */
+
+	private void updateOccupancy(UUID locker_id, Byte boxSize, long totalDelta, long occupiedDelta) throws BackendException {
+		BoundStatement bs = statement(UPDATE_LOCKER_OCCUPANCY);
+		bs.bind(totalDelta, occupiedDelta, locker_id, boxSize);
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not update locker occupancy. " + e.getMessage() + ".", e);
+		}
 
-		logger.info("Shipment " + shipmentName + " inserted with id: " + newUUID+"size: "+boxSize);
+		/* Lockers inserted before box sizes were checked may have sizes the mirror has no slot for */
+		if (!OccupancySummary.isValidBoxSize(boxSize)) {
+			return;
+		}
+		OccupancySummary summary = occupancy.computeIfAbsent(locker_id, OccupancySummary::new);
+		summary.addTotal(boxSize, totalDelta);
+		summary.addOccupied(boxSize, occupiedDelta);
 	}
 
-	public void insertShipmentIntoLocker(UUID locker_id, UUID  shipment_id, Instant timestamp) throws BackendException {
-		//locker_id, shipment_id, locker_box_index, addedAt, status
+	public List<LockerOccupancy> selectAllLockerOccupancy() throws BackendException {
+		BoundStatement bs = statement(SELECT_ALL_FROM_LOCKER_OCCUPANCY);
+		Mapper<LockerOccupancy> mapper = manager.mapper(LockerOccupancy.class);
+
+		ResultSet rs = null;
 
-		Locker locker=selectLocker(locker_id);
-		Shipment shipment=selectShipment(shipment_id);
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
 
-		Byte shipmentSize = shipment.getBox_size();
-		List<Byte> lockerBoxes = locker.getLocker_boxes();
+		return mapper.map(rs).all();
+	}
 
-		//Indexes of lockerBoxes with size>=shipmentsize
-		List<Integer> availableIndices = new ArrayList<>();
-		for (int i = 0; i < lockerBoxes.size(); i++) {
-			if (lockerBoxes.get(i) >= shipmentSize) {
-				availableIndices.add(i);
+	/* Reload the in-memory mirror from locker_occupancy, picking up transitions made by other clients */
+	public void refreshOccupancy() throws BackendException {
+		Map<UUID, OccupancySummary> loaded = new HashMap<>();
+		for (LockerOccupancy row : selectAllLockerOccupancy()) {
+			if (!OccupancySummary.isValidBoxSize(row.getBox_size())) {
+				continue;
 			}
+			OccupancySummary summary = loaded.computeIfAbsent(row.getLocker_id(), OccupancySummary::new);
+			summary.addTotal(row.getBox_size(), row.getTotal() == null ? 0 : row.getTotal());
+			summary.addOccupied(row.getBox_size(), row.getOccupied() == null ? 0 : row.getOccupied());
 		}
 
-		// Sort by size and random when equal to minimize conflicts
-		availableIndices.sort((a, b) -> {
-			int sizeCompare = lockerBoxes.get(a).compareTo(lockerBoxes.get(b));
-			if (sizeCompare == 0) {
-				return new Random().nextInt(3) - 1;
+		occupancy.keySet().retainAll(loaded.keySet());
+		occupancy.putAll(loaded);
+		occupancyLoadedAtNanos = System.nanoTime();
+		occupancyLoaded = true;
+	}
+
+	/* Reloaded when older than occupancy.refresh_ms, so transitions made by other processes show up */
+	public Map<UUID, OccupancySummary> getOccupancySummaries() throws BackendException {
+		if (occupancyStale()) {
+			synchronized (occupancy) {
+				if (occupancyStale()) {
+					refreshOccupancy();
+				}
 			}
-			return sizeCompare;
-		});
-		List<LockerShipment> lockerShipments= selectAllShipmentsFromLockerById(locker_id);
+		}
+		return Collections.unmodifiableMap(occupancy);
+	}
 
-		//Based on lockerShipments check which lockers from availableIndices are free, not have status  "CONFIRMED"
+	private boolean occupancyStale() {
+		return !occupancyLoaded || System.nanoTime() - occupancyLoadedAtNanos > occupancyRefreshNanos;
+	}
 
-		Set<Integer> occupiedIndices = lockerShipments.stream()
-				.filter(lockershipment -> lockershipment.getStatus().equals("CONFIRMED"))
-				.map(LockerShipment::getLocker_box_index)
-				.collect(Collectors.toSet());
+	/*
+	 * Recomputes locker_occupancy from every locker's boxes and its CONFIRMED locker_shipments rows.
+	 * Repairs counters left wrong by a failed counter write and creates them for lockers inserted
+	 * before the table existed. Counters can only be incremented, so each one is moved by its difference
+	 * to the recomputed value; a transition made while its locker is rebuilt can still leave that
+	 * locker off by one, running the rebuild again settles it. Returns the number of counters corrected.
+	 */
+	public int rebuildOccupancy() throws BackendException {
+		int corrected = 0;
+		for (Locker locker : scanAllLockers()) {
+			UUID lockerId = locker.getLocker_id();
+			byte[] boxes = locker.getBoxes();
+			OccupancySummary expected = new OccupancySummary(lockerId);
+			for (byte size : boxes) {
+				if (OccupancySummary.isValidBoxSize(size)) {
+					expected.addTotal(size, 1);
+				}
+			}
+			for (Integer index : ReservationProtocol.lockerShipmentsWithStatus(selectAllShipmentsFromLockerById(lockerId), "CONFIRMED")) {
+				if (index != null && index >= 0 && index < boxes.length && OccupancySummary.isValidBoxSize(boxes[index])) {
+					expected.addOccupied(boxes[index], 1);
+				}
+			}
 
-		availableIndices.removeIf(occupiedIndices::contains);
+			OccupancySummary stored = new OccupancySummary(lockerId);
+			BoundStatement bs = statement(SELECT_LOCKER_OCCUPANCY_BY_ID);
+			bs.bind(lockerId);
+			try {
+				for (LockerOccupancy row : manager.mapper(LockerOccupancy.class).map(execute(bs))) {
+					if (OccupancySummary.isValidBoxSize(row.getBox_size())) {
+						stored.addTotal(row.getBox_size(), row.getTotal() == null ? 0 : row.getTotal());
+						stored.addOccupied(row.getBox_size(), row.getOccupied() == null ? 0 : row.getOccupied());
+					}
+				}
+			} catch(Exception e) {
+				throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+			}
+
+			for (int size = 1; size <= OccupancySummary.MAX_BOX_SIZE; size++) {
+				long totalDelta = expected.getTotal(size) - stored.getTotal(size);
+				long occupiedDelta = expected.getOccupied(size) - stored.getOccupied(size);
+				if (totalDelta != 0 || occupiedDelta != 0) {
+					updateOccupancy(lockerId, (byte) size, totalDelta, occupiedDelta);
+					corrected++;
+				}
+			}
+		}
+
+		refreshOccupancy();
+		logger.info("Occupancy rebuilt, " + corrected + " counters corrected");
+		return corrected;
+	}
+
+	/* reconciliation */
+
+	/* Lazily paged rows of the table with token(partition key) in (startToken, endToken] */
+	public Iterable<MirrorRow> scanMirrorRows(MirrorTable table, long startToken, long endToken) throws BackendException {
+		BoundStatement bs = statement(table == MirrorTable.LOCKER_SHIPMENTS ? SCAN_LOCKER_SHIPMENTS_BY_TOKEN : SCAN_SHIPMENT_LOCKERS_BY_TOKEN);
+		bs.bind(startToken, endToken);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		Iterable<Row> rows = rs;
+		return () -> new Iterator<MirrorRow>() {
+			private final Iterator<Row> it = rows.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public MirrorRow next() {
+				return mirrorRowOf(it.next());
+			}
+		};
+	}
+
+	public MirrorRow selectMirrorRow(MirrorTable table, UUID lockerId, UUID shipmentId) throws BackendException {
 		BoundStatement bs;
-		boolean confirmed=false;
-		for (Integer index : availableIndices) {
-			 bs= new BoundStatement(INSERT_SHIPMENT_INTO_LOCKER);
-			 bs.bind(locker_id, shipment_id, index, timestamp, "WAITING",shipment_id,locker_id,index, timestamp, "WAITING");
-			 try {
-				session.execute(bs);
-			 } catch (Exception e) {
-				throw new BackendException("Could not perform insert operation. " + e.getMessage() + ".", e);
-			 }
-
-			 confirmed=validateInsert(locker_id,shipment_id,index);
-
-			 if(confirmed) {
-				 bs = new BoundStatement(INSERT_SHIPMENT_INTO_LOCKER);
-				 bs.bind(locker_id, shipment_id, index, timestamp, "CONFIRMED", shipment_id, locker_id, index, timestamp, "CONFIRMED");
-				 try {
-					 session.execute(bs);
-				 } catch (Exception e) {
-					 throw new BackendException("Could not perform insert operation. " + e.getMessage() + ".", e);
-				 }
-				 break;
-			 }
-			 else{
-				 bs = new BoundStatement(INSERT_SHIPMENT_INTO_LOCKER);
-				 bs.bind(locker_id, shipment_id, index, timestamp, "REJECTED", shipment_id, locker_id, index, timestamp, "REJECTED");
-				 try {
-					 session.execute(bs);
-				 } catch (Exception e) {
-					 throw new BackendException("Could not perform insert operation. " + e.getMessage() + ".", e);
-				 }
-			 }
-		}
-		System.out.println("insertResult: "+confirmed);
-		//toDO if confirmed==false - there is no lockerbox available,insertion unsuccesfull
-
-	}
-
-	boolean validateInsert(UUID locker_id, UUID  shipment_id,int index) throws BackendException{
-		List<LockerShipment> lockerShipments= selectAllShipmentsFromLockerById(locker_id);
-
-		Instant timestamp=selectShipmentLocker(shipment_id,locker_id).getAddedAt();
-
-		// Choose shipments assigned to same locker box index
-		List<LockerShipment> filteredShipments = lockerShipments.stream()
-				.filter(shipment -> shipment.getLocker_box_index() == index)
-				.collect(Collectors.toList());
-
-		// Check if any shipment has status Confirmed
-		boolean isOccupied = filteredShipments.stream()
-				.anyMatch(shipment -> shipment.getStatus().equals("CONFIRMED"));
-
-		if (isOccupied) {
-			return false;
+		if (table == MirrorTable.LOCKER_SHIPMENTS) {
+			bs = statement(SELECT_LOCKER_SHIPMENT_WRITETIME);
+			bs.bind(lockerId, shipmentId);
+		} else {
+			bs = statement(SELECT_SHIPMENT_LOCKER_WRITETIME);
+			bs.bind(shipmentId, lockerId);
+		}
+
+		Row row;
+
+		try {
+			row = execute(bs).one();
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return row == null ? null : mirrorRowOf(row);
+	}
+
+	/*
+	 * Writes the row into the table with the write time it had where it was read, so any later
+	 * reservation or release of the same pair still wins over the repair.
+	 */
+	public void repairMirrorRow(MirrorTable table, MirrorRow row) throws BackendException {
+		BoundStatement bs;
+		if (table == MirrorTable.LOCKER_SHIPMENTS) {
+			bs = statement(REPAIR_LOCKER_SHIPMENT);
+			bs.bind(row.getLockerId(), row.getShipmentId(), row.getLockerBoxIndex(), row.getAddedAt(), row.getStatus(), row.getWrittenMicros());
+		} else {
+			bs = statement(REPAIR_SHIPMENT_LOCKER);
+			bs.bind(row.getShipmentId(), row.getLockerId(), row.getLockerBoxIndex(), row.getAddedAt(), row.getStatus(), row.getWrittenMicros());
+		}
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform insert operation. " + e.getMessage() + ".", e);
+		}
+	}
+
+	/*
+	 * Removes a row whose mirror row was deleted after the row was written. The delete carries the row's
+	 * own write time, so a reservation of the same pair written since is kept. A CONFIRMED shipment_lockers
+	 * row is what a release leaves when it stops after its locker_shipments delete, and that release is
+	 * finished instead, which also frees the box and drops the placement.
+	 */
+	public void deleteOrphanRow(MirrorTable table, MirrorRow row) throws BackendException {
+		if (table == MirrorTable.SHIPMENT_LOCKERS && "CONFIRMED".equals(row.getStatus())) {
+			releaseShipmentFromLocker(row.getLockerId(), row.getShipmentId());
+			return;
 		}
 
-		// Check if any shipment has an earlier timestamp
-		boolean isNotFirst = filteredShipments.stream()
-				.anyMatch(shipment -> shipment.getAddedAt().isBefore(timestamp));
+		BoundStatement bs;
+		if (table == MirrorTable.LOCKER_SHIPMENTS) {
+			bs = statement(DELETE_ORPHAN_LOCKER_SHIPMENT);
+			bs.bind(row.getWrittenMicros(), row.getLockerId(), row.getShipmentId());
+		} else {
+			bs = statement(DELETE_ORPHAN_SHIPMENT_LOCKER);
+			bs.bind(row.getWrittenMicros(), row.getShipmentId(), row.getLockerId());
+		}
 
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
+		}
+		if ("CONFIRMED".equals(row.getStatus())) {
+			deletePlacement(row.getShipmentId(), row.getLockerId());
+		}
+	}
 
-		if (isNotFirst) {
+	/* Writes the shipment_placements row for a CONFIRMED row that has none; returns true if it was missing */
+	public boolean backfillPlacement(MirrorRow row) throws BackendException {
+		if (selectPlacement(row.getShipmentId()) != null) {
 			return false;
 		}
 
+		BoundStatement bs = statement(BACKFILL_SHIPMENT_PLACEMENT);
+		bs.bind(row.getShipmentId(), row.getLockerId(), row.getLockerBoxIndex(), row.getAddedAt(), row.getWrittenMicros());
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+		}
+		placements.invalidate(row.getShipmentId());
 		return true;
 	}
 
-	public void insertShipmentIntoLocker(UUID locker_id, UUID  shipment_id) throws BackendException{
-		insertShipmentIntoLocker(locker_id,shipment_id,Instant.now());
+	private static MirrorRow mirrorRowOf(Row row) {
+		return new MirrorRow(row.getUUID("locker_id"), row.getUUID("shipment_id"),
+				row.isNull("locker_box_index") ? null : row.getInt("locker_box_index"),
+				row.get("addedAt", Instant.class), row.getString("status"), row.getLong("written"));
+	}
+
+	/* Finished token ranges of a reconciliation job, range_start to range_end */
+	public Map<Long, Long> selectReconcileCheckpoints(String job) throws BackendException {
+		BoundStatement bs = statement(SELECT_RECONCILE_CHECKPOINTS);
+		bs.bind(job);
+		Map<Long, Long> ranges = new HashMap<>();
+
+		try {
+			for (Row row : execute(bs)) {
+				ranges.put(row.getLong("range_start"), row.getLong("range_end"));
+			}
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return ranges;
+	}
+
+	public void saveReconcileCheckpoint(String job, long startToken, long endToken, long rowsScanned, long rowsRepaired) throws BackendException {
+		BoundStatement bs = statement(INSERT_RECONCILE_CHECKPOINT);
+		bs.bind(job, startToken, endToken, rowsScanned, rowsRepaired, Instant.now());
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+		}
+	}
+
+	/* reservation workers */
+
+	public List<ReservationWorker> selectReservationWorkers(String ring) throws BackendException {
+		BoundStatement bs = statement(SELECT_RESERVATION_WORKERS);
+		bs.bind(ring);
+		Mapper<ReservationWorker> mapper = manager.mapper(ReservationWorker.class);
+
+		ResultSet rs = null;
+
+		try {
+			rs = execute(bs);
+		} catch(Exception e) {
+			throw new BackendException("Could not execute statement. " + e.getMessage() + ".", e);
+		}
+
+		return mapper.map(rs).all();
+	}
+
+	/* Writes the worker row again with a fresh TTL; the row disappears ttlSeconds after the last heartbeat */
+	public void heartbeatReservationWorker(ReservationWorker worker, int ttlSeconds) throws BackendException {
+		BoundStatement bs = statement(UPSERT_RESERVATION_WORKER);
+		bs.bind(worker.getRing(), worker.getWorker_id(), worker.getEndpoint(), worker.getJoined_at(), ttlSeconds);
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform an insert. " + e.getMessage() + ".", e);
+		}
+	}
+
+	public void deleteReservationWorker(String ring, String workerId) throws BackendException {
+		BoundStatement bs = statement(DELETE_RESERVATION_WORKER);
+		bs.bind(ring, workerId);
+
+		try {
+			execute(bs);
+		} catch (Exception e) {
+			throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
+		}
+	}
+
+	/* migration */
+
+	/*
+	 * Rewrites every locker still holding locker_boxes into locker_box_layout and clears the list in the
+	 * same write. Lockers are never updated after insert and reads fall back to the list until the row is
+	 * rewritten, so this runs while the service keeps serving. Safe to rerun; returns the rows rewritten.
+	 */
+	public long migrateLockerBoxes() throws BackendException {
+		long migrated = 0;
+		List<ResultSetFuture> writes = new ArrayList<>();
+
+		try {
+			for (Row row : execute(statement(SELECT_LOCKER_BOXES_FOR_MIGRATION))) {
+				List<Byte> boxes = row.getList("locker_boxes", Byte.class);
+				if (boxes.isEmpty()) {
+					continue;
+				}
+				byte[] layout = row.get("locker_box_layout", byte[].class);
+				if (layout == null) {
+					layout = new byte[boxes.size()];
+					for (int i = 0; i < layout.length; i++) {
+						layout[i] = boxes.get(i);
+					}
+				}
+
+				BoundStatement bs = statement(MIGRATE_LOCKER_BOXES);
+				bs.bind(layout, row.getUUID("locker_id"));
+				writes.add(session.executeAsync(bs));
+				if (writes.size() >= MIGRATION_WINDOW) {
+					migrated += awaitAll(writes);
+				}
+			}
+			migrated += awaitAll(writes);
+		} catch (Exception e) {
+			throw new BackendException("Could not migrate locker boxes. " + e.getMessage() + ".", e);
+		}
+
+		logger.info("Migrated " + migrated + " lockers to locker_box_layout");
+		return migrated;
+	}
+
+	private static int awaitAll(List<ResultSetFuture> futures) {
+		for (ResultSetFuture future : futures) {
+			future.getUninterruptibly();
+		}
+		int count = futures.size();
+		futures.clear();
+		return count;
 	}
 
 	public void deleteAll() throws BackendException {
-		BoundStatement bs = new BoundStatement(DELETE_ALL_FROM_LOCKERS);
-		BoundStatement bs1 = new BoundStatement(DELETE_ALL_FROM_SHIPMENTS);
-		BoundStatement bs2 = new BoundStatement(DELETE_ALL_FROM_LOCKER_SHIPMENTS);
-		BoundStatement bs3 = new BoundStatement(DELETE_ALL_FROM_SHIPMENT_LOCKERS);
+		BoundStatement bs = statement(DELETE_ALL_FROM_LOCKERS);
+		BoundStatement bs1 = statement(DELETE_ALL_FROM_SHIPMENTS);
+		BoundStatement bs2 = statement(DELETE_ALL_FROM_LOCKER_SHIPMENTS);
+		BoundStatement bs3 = statement(DELETE_ALL_FROM_SHIPMENT_LOCKERS);
+		BoundStatement bs4 = statement(DELETE_ALL_FROM_LOCKER_OCCUPANCY);
+		BoundStatement bs5 = statement(DELETE_ALL_FROM_SHIPMENT_PLACEMENTS);
+		BoundStatement bs6 = statement(DELETE_ALL_FROM_SNAPSHOT_CHANGES);
 
 		try {
-			session.execute(bs);
-			session.execute(bs1);
-			session.execute(bs2);
-			session.execute(bs3);
+			execute(bs);
+			execute(bs1);
+			execute(bs2);
+			execute(bs3);
+			execute(bs4);
+			execute(bs5);
+			execute(bs6);
 		} catch (Exception e) {
 			throw new BackendException("Could not perform a delete operation. " + e.getMessage() + ".", e);
 		}
+		occupancy.clear();
+		placements.clear();
+		/* The snapshot still holds the deleted rows */
+		warm = null;
 
 		logger.info("All data deleted");
 	}
@@ -398,14 +1633,43 @@ public class BackendSession {
 		return duplicates.size();
 	}
 
-	protected void finalize() {
+	/*
+	 * Stop accepting writes, wait up to shutdown.drain_timeout_ms for operations in flight to finish,
+	 * then close the cluster, which itself waits for requests still on the wire.
+	 */
+	@Override
+	public void close() {
+		if (closing) {
+			return;
+		}
+		ready = false;
+		closing = true;
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+		synchronized (inFlight) {
+			while (inFlight.get() > 0) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					logger.warn("Closing with " + inFlight.get() + " operations still in flight");
+					break;
+				}
+				try {
+					inFlight.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
 		try {
 			if (session != null) {
-				session.getCluster().close();
+				session.getCluster().closeAsync().get(drainTimeoutMillis, TimeUnit.MILLISECONDS);
 			}
 		} catch (Exception e) {
 			logger.error("Could not close existing cluster", e);
 		}
+		logger.info("Backend closed");
 	}
 
 }
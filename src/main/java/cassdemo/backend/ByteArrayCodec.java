@@ -0,0 +1,47 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.datastax.driver.core.utils.Bytes;
+
+import java.nio.ByteBuffer;
+
+/* Maps blob columns straight to byte[], so the mapper can fill byte[] fields without a ByteBuffer in between */
+public class ByteArrayCodec extends TypeCodec<byte[]> {
+
+	public static final ByteArrayCodec instance = new ByteArrayCodec();
+
+	private ByteArrayCodec() {
+		super(DataType.blob(), byte[].class);
+	}
+
+	/* The array is wrapped, not copied: do not modify it while the statement is in use */
+	@Override
+	public ByteBuffer serialize(byte[] value, ProtocolVersion protocolVersion) {
+		return value == null ? null : ByteBuffer.wrap(value);
+	}
+
+	@Override
+	public byte[] deserialize(ByteBuffer bytes, ProtocolVersion protocolVersion) {
+		return bytes == null ? null : Bytes.getArray(bytes);
+	}
+
+	@Override
+	public byte[] parse(String value) {
+		if (value == null || value.isEmpty() || value.equalsIgnoreCase("NULL")) {
+			return null;
+		}
+		try {
+			return Bytes.getArray(Bytes.fromHexString(value));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidTypeException("Cannot parse blob value from \"" + value + "\"", e);
+		}
+	}
+
+	@Override
+	public String format(byte[] value) {
+		return value == null ? "NULL" : Bytes.toHexString(value);
+	}
+}
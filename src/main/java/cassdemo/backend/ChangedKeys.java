@@ -0,0 +1,37 @@
+package cassdemo.backend;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/* Lockers and shipments named in snapshot_changes over a time range, each key once */
+public class ChangedKeys {
+
+	private final Set<UUID> lockerIds = new HashSet<>();
+	private final Set<UUID> shipmentIds = new HashSet<>();
+	private long changes = 0;
+
+	void add(UUID lockerId, Collection<UUID> shipmentIds) {
+		if (lockerId != null) {
+			lockerIds.add(lockerId);
+		}
+		if (shipmentIds != null) {
+			this.shipmentIds.addAll(shipmentIds);
+		}
+		changes++;
+	}
+
+	public Set<UUID> getLockerIds() {
+		return lockerIds;
+	}
+
+	public Set<UUID> getShipmentIds() {
+		return shipmentIds;
+	}
+
+	/* Change log rows read, a key changed many times counts every time */
+	public long getChanges() {
+		return changes;
+	}
+}
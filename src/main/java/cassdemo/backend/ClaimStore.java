@@ -0,0 +1,35 @@
+package cassdemo.backend;
+
+import cassdemo.tables.*;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/* Reads and writes behind ReservationProtocol, implemented by BackendSession and by the protocol simulation */
+public interface ClaimStore {
+
+	Locker selectLocker(UUID lockerId) throws BackendException;
+
+	Shipment selectShipment(UUID shipmentId) throws BackendException;
+
+	List<Shipment> selectShipments(List<UUID> shipmentIds) throws BackendException;
+
+	List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) throws BackendException;
+
+	ShipmentLocker selectShipmentLocker(UUID shipmentId, UUID lockerId) throws BackendException;
+
+	/* Records the keys a reservation is about to write for snapshot catch-up; never waited for */
+	void logChange(UUID lockerId, Collection<UUID> shipmentIds);
+
+	/* One claim into locker_shipments and shipment_lockers; a CONFIRMED claim also writes its shipment_placements row */
+	void writeClaim(UUID lockerId, UUID shipmentId, int index, Instant timestamp, String status) throws BackendException;
+
+	/* Claims of many shipments into one locker, claims with status and otherClaims with otherStatus */
+	void writeClaims(UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status,
+					 Map<UUID, Integer> otherClaims, String otherStatus) throws BackendException;
+
+	void updateOccupancy(UUID lockerId, Byte boxSize, long totalDelta, long occupiedDelta) throws BackendException;
+}
@@ -0,0 +1,95 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+
+import java.util.Properties;
+
+/*
+ * Execution settings shared by a group of statements. Consistency, serial consistency and idempotence
+ * are set once on the PreparedStatement and inherited by every BoundStatement; timeout and fetch size
+ * are not inherited by the driver, so they are applied to each statement before it is executed.
+ */
+public class ExecutionProfile {
+
+	private final String name;
+	private final ConsistencyLevel consistency;
+	private final ConsistencyLevel serialConsistency;
+	private final int timeoutMillis;
+	private final boolean idempotent;
+	private final int fetchSize;
+
+	public ExecutionProfile(String name, ConsistencyLevel consistency, ConsistencyLevel serialConsistency,
+							int timeoutMillis, boolean idempotent, int fetchSize) {
+		this.name = name;
+		this.consistency = consistency;
+		this.serialConsistency = serialConsistency;
+		this.timeoutMillis = timeoutMillis;
+		this.idempotent = idempotent;
+		this.fetchSize = fetchSize;
+	}
+
+	/* Keys: profile.<name>.consistency, .serial_consistency, .timeout_ms, .idempotent, .fetch_size */
+	public static ExecutionProfile fromProperties(Properties properties, ExecutionProfile defaults) {
+		String prefix = "profile." + defaults.name + ".";
+		return new ExecutionProfile(
+				defaults.name,
+				ConsistencyLevel.valueOf(properties.getProperty(prefix + "consistency", defaults.consistency.name())),
+				ConsistencyLevel.valueOf(properties.getProperty(prefix + "serial_consistency", defaults.serialConsistency.name())),
+				Integer.parseInt(properties.getProperty(prefix + "timeout_ms", String.valueOf(defaults.timeoutMillis))),
+				Boolean.parseBoolean(properties.getProperty(prefix + "idempotent", String.valueOf(defaults.idempotent))),
+				Integer.parseInt(properties.getProperty(prefix + "fetch_size", String.valueOf(defaults.fetchSize))));
+	}
+
+	void applyTo(PreparedStatement ps) {
+		ps.setConsistencyLevel(consistency);
+		ps.setSerialConsistencyLevel(serialConsistency);
+		ps.setIdempotent(idempotent);
+	}
+
+	<T extends Statement> T applyTo(T statement) {
+		statement.setConsistencyLevel(consistency);
+		statement.setSerialConsistencyLevel(serialConsistency);
+		statement.setIdempotent(idempotent);
+		statement.setReadTimeoutMillis(timeoutMillis);
+		statement.setFetchSize(fetchSize);
+		return statement;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ConsistencyLevel getConsistency() {
+		return consistency;
+	}
+
+	public ConsistencyLevel getSerialConsistency() {
+		return serialConsistency;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionProfile{" +
+				"name='" + name + '\'' +
+				", consistency=" + consistency +
+				", serialConsistency=" + serialConsistency +
+				", timeoutMillis=" + timeoutMillis +
+				", idempotent=" + idempotent +
+				", fetchSize=" + fetchSize +
+				'}';
+	}
+}
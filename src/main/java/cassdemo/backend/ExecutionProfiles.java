@@ -0,0 +1,128 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.*;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Named execution profiles for the statements of BackendSession, with per-profile latency statistics.
+ *
+ * Reads of write-once metadata (lockers, shipments) are safe at ONE. The locker_shipments partition
+ * reads behind validateInsert and the WAITING / CONFIRMED / REJECTED writes use QUORUM, so that on a
+ * replication_factor 3 keyspace every validation read overlaps every claim write. Conditional (IF)
+ * writes run their Paxos round at SERIAL and are never retried by the driver: a retry of an update
+ * that was applied finds the condition false and reports it as not applied.
+ */
+public class ExecutionProfiles implements LatencyTracker {
+
+	public static final String METADATA_READ = "metadata_read";
+	public static final String METADATA_WRITE = "metadata_write";
+	public static final String PARTITION_READ = "partition_read";
+	public static final String CLAIM_WRITE = "claim_write";
+	public static final String CONDITIONAL_WRITE = "conditional_write";
+	public static final String COUNTER_WRITE = "counter_write";
+	public static final String SCAN = "scan";
+	public static final String ADMIN = "admin";
+
+	private static final ConsistencyLevel SERIAL = ConsistencyLevel.SERIAL;
+
+	private final Map<String, ExecutionProfile> profiles = new LinkedHashMap<>();
+	private final Map<PreparedStatement, ExecutionProfile> statements = new ConcurrentHashMap<>();
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	private static final class Stats {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+	}
+
+	public ExecutionProfiles(Properties properties) {
+		add(properties, new ExecutionProfile(METADATA_READ, ConsistencyLevel.ONE, SERIAL, 2000, true, 5000));
+		add(properties, new ExecutionProfile(METADATA_WRITE, ConsistencyLevel.QUORUM, SERIAL, 5000, true, 5000));
+		add(properties, new ExecutionProfile(PARTITION_READ, ConsistencyLevel.QUORUM, SERIAL, 5000, true, 5000));
+		add(properties, new ExecutionProfile(CLAIM_WRITE, ConsistencyLevel.QUORUM, SERIAL, 5000, true, 5000));
+		add(properties, new ExecutionProfile(CONDITIONAL_WRITE, ConsistencyLevel.QUORUM, SERIAL, 5000, false, 5000));
+		/* Counter updates are not idempotent, a retried increment would be counted twice */
+		add(properties, new ExecutionProfile(COUNTER_WRITE, ConsistencyLevel.QUORUM, SERIAL, 5000, false, 5000));
+		add(properties, new ExecutionProfile(SCAN, ConsistencyLevel.ONE, SERIAL, 30000, true, 1000));
+		add(properties, new ExecutionProfile(ADMIN, ConsistencyLevel.ALL, SERIAL, 60000, true, 5000));
+	}
+
+	private void add(Properties properties, ExecutionProfile defaults) {
+		profiles.put(defaults.getName(), ExecutionProfile.fromProperties(properties, defaults));
+		stats.put(defaults.getName(), new Stats());
+	}
+
+	public ExecutionProfile get(String name) {
+		ExecutionProfile profile = profiles.get(name);
+		if (profile == null) {
+			throw new IllegalArgumentException("Unknown execution profile " + name);
+		}
+		return profile;
+	}
+
+	void register(PreparedStatement ps, String name) {
+		ExecutionProfile profile = get(name);
+		profile.applyTo(ps);
+		statements.put(ps, profile);
+	}
+
+	BoundStatement bind(PreparedStatement ps) {
+		BoundStatement bs = new BoundStatement(ps);
+		ExecutionProfile profile = statements.get(ps);
+		return profile == null ? bs : profile.applyTo(bs);
+	}
+
+	ExecutionProfile profileOf(Statement statement) {
+		if (statement instanceof BoundStatement) {
+			return statements.get(((BoundStatement) statement).preparedStatement());
+		}
+		if (statement instanceof BatchStatement) {
+			Iterator<Statement> inner = ((BatchStatement) statement).getStatements().iterator();
+			return inner.hasNext() ? profileOf(inner.next()) : null;
+		}
+		return null;
+	}
+
+	/* latency tracking */
+
+	@Override
+	public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+		ExecutionProfile profile = profileOf(statement);
+		if (profile == null) {
+			return;
+		}
+		Stats profileStats = stats.get(profile.getName());
+		profileStats.count.increment();
+		profileStats.totalNanos.add(newLatencyNanos);
+		if (exception != null) {
+			profileStats.errors.increment();
+		}
+	}
+
+	@Override
+	public void onRegister(Cluster cluster) {
+	}
+
+	@Override
+	public void onUnregister(Cluster cluster) {
+	}
+
+	public String statsReport() {
+		StringBuilder sb = new StringBuilder("Execution profiles:");
+		for (ExecutionProfile profile : profiles.values()) {
+			Stats profileStats = stats.get(profile.getName());
+			long count = profileStats.count.sum();
+			double meanMillis = count == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(profileStats.totalNanos.sum()) / count / 1000;
+			sb.append(String.format("%n  %-15s %-6s requests=%d errors=%d mean=%.2fms",
+					profile.getName(), profile.getConsistency(), count, profileStats.errors.sum(), meanMillis));
+		}
+		return sb.toString();
+	}
+}
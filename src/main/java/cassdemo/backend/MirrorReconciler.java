@@ -0,0 +1,203 @@
+package cassdemo.backend;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Brings locker_shipments and shipment_lockers back in line after reservations that failed between
+ * the writes to the two tables.
+ *
+ * The ring is cut into a fixed number of equal token ranges, and a small pool walks the source
+ * table's ranges in parallel. Each row is compared with its mirror row. A missing mirror row is
+ * written from the source. When the two rows differ, the one with the later status write time is
+ * copied over the other. Repairs keep the original write time, so a reservation or release running
+ * at the same time always wins. With backfill_placements, CONFIRMED rows also get their
+ * shipment_placements row when it is missing.
+ *
+ * A mirror row that was deleted, by a release that stopped between its two deletes, reads as missing
+ * too. Its tombstone is newer than the source row, so the repair stays invisible; the mirror row is
+ * read back after every repair of a missing row, and when it is still absent the source row is an
+ * orphan and is deleted instead of being counted as repaired on every run. This relies on the
+ * tombstone still being there, so jobs have to run more often than gc_grace_seconds.
+ *
+ * A shared rows_per_second limit on scanned rows keeps the job from competing with reservations.
+ * Every finished range is checkpointed under the job name, and running the same job again skips
+ * those ranges. Orphans that exist only in the mirror table are found by a run over the other table.
+ */
+public class MirrorReconciler {
+
+	private static final Logger logger = LoggerFactory.getLogger(MirrorReconciler.class);
+
+	private final BackendSession session;
+	private final MirrorTable source;
+	private final String job;
+	private final int splits;
+	private final int parallelism;
+	private final boolean backfillPlacements;
+	private final RateLimiter rowsPerSecond;
+
+	private final LongAdder scanned = new LongAdder();
+	private final LongAdder missing = new LongAdder();
+	private final LongAdder diverged = new LongAdder();
+	private final LongAdder orphans = new LongAdder();
+	private final LongAdder placementsWritten = new LongAdder();
+	private final AtomicInteger rangesDone = new AtomicInteger();
+	private final AtomicInteger rangesSkipped = new AtomicInteger();
+	private final AtomicInteger rangesFailed = new AtomicInteger();
+
+	public MirrorReconciler(BackendSession session, MirrorTable source, String job, int splits, int parallelism,
+							double rowsPerSecond, boolean backfillPlacements) {
+		this.session = session;
+		this.source = source;
+		this.job = job;
+		this.splits = splits;
+		this.parallelism = parallelism;
+		this.backfillPlacements = backfillPlacements;
+		this.rowsPerSecond = RateLimiter.create(rowsPerSecond);
+	}
+
+	public static MirrorReconciler fromProperties(BackendSession session, MirrorTable source, String job, Properties properties) {
+		return new MirrorReconciler(session, source, job,
+				Integer.parseInt(properties.getProperty("reconcile.splits", "256")),
+				Integer.parseInt(properties.getProperty("reconcile.parallelism", "4")),
+				Double.parseDouble(properties.getProperty("reconcile.rows_per_second", "2000")),
+				Boolean.parseBoolean(properties.getProperty("reconcile.backfill_placements", "true")));
+	}
+
+	/* Walks every range not yet checkpointed for the job; returns false if some ranges failed and need a rerun */
+	public boolean run() throws BackendException {
+		Map<Long, Long> done = session.selectReconcileCheckpoints(job);
+		logger.info("Reconciling " + source.getTableName() + " against " + source.mirror().getTableName()
+				+ " as job " + job + ", " + done.size() + " of " + splits + " ranges already done");
+
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "reconcile-" + job);
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> ranges = new ArrayList<>();
+			long step = Long.divideUnsigned(-1L, splits);
+			for (int i = 0; i < splits; i++) {
+				long start = Long.MIN_VALUE + i * step;
+				long end = i == splits - 1 ? Long.MAX_VALUE : Long.MIN_VALUE + (i + 1) * step;
+				if (Long.valueOf(end).equals(done.get(start))) {
+					rangesSkipped.incrementAndGet();
+					continue;
+				}
+				ranges.add(pool.submit(() -> reconcileRange(start, end)));
+			}
+			for (Future<?> range : ranges) {
+				range.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BackendException("Reconciliation interrupted", e);
+		} catch (Exception e) {
+			throw new BackendException("Reconciliation failed. " + e.getMessage() + ".", e);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		logger.info("Reconciliation of " + source.getTableName() + " finished: " + this);
+		return rangesFailed.get() == 0;
+	}
+
+	private void reconcileRange(long start, long end) {
+		long rows = 0;
+		long repaired = 0;
+		try {
+			for (MirrorRow row : session.scanMirrorRows(source, start, end)) {
+				rowsPerSecond.acquire();
+				rows++;
+				repaired += reconcileRow(row);
+			}
+			session.saveReconcileCheckpoint(job, start, end, rows, repaired);
+			int finished = rangesDone.incrementAndGet();
+			logger.debug("Range (" + start + ", " + end + "] done: " + rows + " rows, " + repaired + " repaired, "
+					+ finished + " ranges finished");
+		} catch (BackendException | RuntimeException e) {
+			/* Not checkpointed; the next run of the job retries it */
+			rangesFailed.incrementAndGet();
+			logger.warn("Range (" + start + ", " + end + "] failed after " + rows + " rows: " + e.getMessage());
+		}
+	}
+
+	private int reconcileRow(MirrorRow row) throws BackendException {
+		scanned.increment();
+		int repaired = 0;
+
+		MirrorRow mirrored = session.selectMirrorRow(source.mirror(), row.getLockerId(), row.getShipmentId());
+		MirrorRow winner = row;
+		if (mirrored == null) {
+			session.repairMirrorRow(source.mirror(), row);
+			/* Shadowed by a newer tombstone: the mirror row was deleted, not lost */
+			if (session.selectMirrorRow(source.mirror(), row.getLockerId(), row.getShipmentId()) == null) {
+				orphans.increment();
+				session.deleteOrphanRow(source, row);
+				return 1;
+			}
+			missing.increment();
+			repaired++;
+		} else if (!row.sameContent(mirrored)) {
+			diverged.increment();
+			if (row.getWrittenMicros() >= mirrored.getWrittenMicros()) {
+				session.repairMirrorRow(source.mirror(), row);
+			} else {
+				session.repairMirrorRow(source, mirrored);
+				winner = mirrored;
+			}
+			repaired++;
+		}
+
+		if (backfillPlacements && "CONFIRMED".equals(winner.getStatus()) && session.backfillPlacement(winner)) {
+			placementsWritten.increment();
+			repaired++;
+		}
+		return repaired;
+	}
+
+	public long getScanned() {
+		return scanned.sum();
+	}
+
+	public long getMissing() {
+		return missing.sum();
+	}
+
+	public long getDiverged() {
+		return diverged.sum();
+	}
+
+	public long getOrphans() {
+		return orphans.sum();
+	}
+
+	public long getPlacementsWritten() {
+		return placementsWritten.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "MirrorReconciler{job=" + job
+				+ ", scanned=" + getScanned()
+				+ ", missing=" + getMissing()
+				+ ", diverged=" + getDiverged()
+				+ ", orphans=" + getOrphans()
+				+ ", placements=" + getPlacementsWritten()
+				+ ", ranges done=" + rangesDone.get()
+				+ ", skipped=" + rangesSkipped.get()
+				+ ", failed=" + rangesFailed.get() + "}";
+	}
+}
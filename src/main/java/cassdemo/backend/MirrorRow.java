@@ -0,0 +1,68 @@
+package cassdemo.backend;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/* A locker_shipments or shipment_lockers row together with the write time of its status cell */
+public class MirrorRow {
+
+	private final UUID lockerId;
+	private final UUID shipmentId;
+	private final Integer lockerBoxIndex;
+	private final Instant addedAt;
+	private final String status;
+	private final long writtenMicros;
+
+	public MirrorRow(UUID lockerId, UUID shipmentId, Integer lockerBoxIndex, Instant addedAt, String status, long writtenMicros) {
+		this.lockerId = lockerId;
+		this.shipmentId = shipmentId;
+		this.lockerBoxIndex = lockerBoxIndex;
+		this.addedAt = addedAt;
+		this.status = status;
+		this.writtenMicros = writtenMicros;
+	}
+
+	public UUID getLockerId() {
+		return lockerId;
+	}
+
+	public UUID getShipmentId() {
+		return shipmentId;
+	}
+
+	public Integer getLockerBoxIndex() {
+		return lockerBoxIndex;
+	}
+
+	public Instant getAddedAt() {
+		return addedAt;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public long getWrittenMicros() {
+		return writtenMicros;
+	}
+
+	/* Same box, claim time and status; write times are not compared */
+	public boolean sameContent(MirrorRow other) {
+		return Objects.equals(lockerBoxIndex, other.lockerBoxIndex)
+				&& Objects.equals(addedAt, other.addedAt)
+				&& Objects.equals(status, other.status);
+	}
+
+	@Override
+	public String toString() {
+		return "MirrorRow{" +
+				"locker_id=" + lockerId +
+				", shipment_id=" + shipmentId +
+				", locker_box_index=" + lockerBoxIndex +
+				", addedAt=" + addedAt +
+				", status='" + status + '\'' +
+				", written=" + writtenMicros +
+				'}';
+	}
+}
@@ -0,0 +1,21 @@
+package cassdemo.backend;
+
+/* The two tables holding every locker / shipment relationship; each is the mirror of the other */
+public enum MirrorTable {
+	LOCKER_SHIPMENTS("locker_shipments"),
+	SHIPMENT_LOCKERS("shipment_lockers");
+
+	private final String tableName;
+
+	MirrorTable(String tableName) {
+		this.tableName = tableName;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public MirrorTable mirror() {
+		return this == LOCKER_SHIPMENTS ? SHIPMENT_LOCKERS : LOCKER_SHIPMENTS;
+	}
+}
@@ -0,0 +1,61 @@
+package cassdemo.backend;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * In-memory mirror of the locker_occupancy rows of a single locker.
+ * Box sizes 1 = Small, 2 = Medium, 3 = Large are used directly as array indices.
+ */
+public class OccupancySummary {
+
+	public static final int MAX_BOX_SIZE = 3;
+
+	private final UUID lockerId;
+	private final AtomicLongArray total = new AtomicLongArray(MAX_BOX_SIZE + 1);
+	private final AtomicLongArray occupied = new AtomicLongArray(MAX_BOX_SIZE + 1);
+
+	public OccupancySummary(UUID lockerId) {
+		this.lockerId = lockerId;
+	}
+
+	/* Sizes that have a counter; lockers and shipments with other sizes are refused on insert */
+	public static boolean isValidBoxSize(Byte boxSize) {
+		return boxSize != null && boxSize >= 1 && boxSize <= MAX_BOX_SIZE;
+	}
+
+	public UUID getLockerId() {
+		return lockerId;
+	}
+
+	public long getTotal(int boxSize) {
+		return total.get(boxSize);
+	}
+
+	public long getOccupied(int boxSize) {
+		return occupied.get(boxSize);
+	}
+
+	public long getFree(int boxSize) {
+		return Math.max(0, total.get(boxSize) - occupied.get(boxSize));
+	}
+
+	public void addTotal(int boxSize, long delta) {
+		total.addAndGet(boxSize, delta);
+	}
+
+	public void addOccupied(int boxSize, long delta) {
+		occupied.addAndGet(boxSize, delta);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("OccupancySummary{locker_id=" + lockerId);
+		for (int size = 1; size <= MAX_BOX_SIZE; size++) {
+			sb.append(", size").append(size).append("=")
+					.append(getFree(size)).append(" free/")
+					.append(getOccupied(size)).append(" occupied");
+		}
+		return sb.append('}').toString();
+	}
+}
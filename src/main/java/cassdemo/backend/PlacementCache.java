@@ -0,0 +1,125 @@
+package cassdemo.backend;
+
+import cassdemo.tables.ShipmentPlacement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Near cache of shipment_placements lookups, including "not placed" answers, in LRU order.
+ *
+ * Transitions made through this process update or drop the entry as soon as they are written.
+ * Transitions made by other processes are picked up when the entry expires after ttl_ms. A lookup
+ * that was reading from the cluster while any transition happened does not store its result,
+ * so a stale read can never replace a newer placement.
+ */
+public class PlacementCache {
+
+	public interface Loader {
+		ShipmentPlacement load(UUID shipmentId) throws BackendException;
+	}
+
+	private static final class Entry {
+		final ShipmentPlacement placement;
+		final long expiresAtNanos;
+
+		Entry(ShipmentPlacement placement, long expiresAtNanos) {
+			this.placement = placement;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final Map<UUID, Entry> entries;
+	private final AtomicLong transitions = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public PlacementCache(int maxEntries, long ttlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+				return size() > PlacementCache.this.maxEntries;
+			}
+		};
+	}
+
+	public static PlacementCache fromProperties(Properties properties) {
+		return new PlacementCache(
+				Integer.parseInt(properties.getProperty("placement_cache.max_entries", "100000")),
+				Long.parseLong(properties.getProperty("placement_cache.ttl_ms", "5000")));
+	}
+
+	/* Current placement of the shipment or null when it is not placed, loaded on a miss */
+	public ShipmentPlacement get(UUID shipmentId, Loader loader) throws BackendException {
+		synchronized (entries) {
+			Entry entry = entries.get(shipmentId);
+			if (entry != null && System.nanoTime() - entry.expiresAtNanos < 0) {
+				hits.increment();
+				return entry.placement;
+			}
+		}
+		misses.increment();
+
+		long generation = transitions.get();
+		ShipmentPlacement placement = loader.load(shipmentId);
+		synchronized (entries) {
+			if (transitions.get() == generation && maxEntries > 0) {
+				entries.put(shipmentId, new Entry(placement, System.nanoTime() + ttlNanos));
+			}
+		}
+		return placement;
+	}
+
+	/* Call after the placement has been written */
+	public void put(ShipmentPlacement placement) {
+		synchronized (entries) {
+			transitions.incrementAndGet();
+			if (maxEntries > 0) {
+				entries.put(placement.getShipment_id(), new Entry(placement, System.nanoTime() + ttlNanos));
+			}
+		}
+	}
+
+	/* Call after the placement has been deleted */
+	public void invalidate(UUID shipmentId) {
+		synchronized (entries) {
+			transitions.incrementAndGet();
+			entries.remove(shipmentId);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			transitions.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PlacementCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+	}
+}
@@ -0,0 +1,37 @@
+package cassdemo.backend;
+
+import cassdemo.tables.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/* Operations served to terminals, implemented by BackendSession and by in-process stand-ins for testing */
+public interface ReservationBackend {
+
+	/* True while the backend can take requests, false during startup and shutdown */
+	boolean isReady();
+
+	List<Locker> selectAllLockers() throws BackendException;
+
+	List<Shipment> selectAllShipments() throws BackendException;
+
+	Locker selectLocker(UUID lockerId) throws BackendException;
+
+	Shipment selectShipment(UUID shipmentId) throws BackendException;
+
+	List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) throws BackendException;
+
+	List<ShipmentLocker> selectAllLockersFromShipmentById(UUID shipmentId) throws BackendException;
+
+	/* Current CONFIRMED placement of the shipment, or null when it is not in any locker */
+	ShipmentPlacement findConfirmedLocker(UUID shipmentId) throws BackendException;
+
+	ReservationResult insertShipmentIntoLocker(UUID lockerId, UUID shipmentId) throws BackendException;
+
+	Map<UUID, ReservationResult> assignShipmentsToLocker(UUID lockerId, List<UUID> shipmentIds) throws BackendException;
+
+	boolean releaseShipmentFromLocker(UUID lockerId, UUID shipmentId) throws BackendException;
+
+	Map<UUID, OccupancySummary> getOccupancySummaries() throws BackendException;
+}
@@ -0,0 +1,244 @@
+package cassdemo.backend;
+
+import cassdemo.tables.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/*
+ * The timestamp-ordered reservation protocol: claim a box as WAITING, read the locker partition back
+ * and keep the box (CONFIRMED) only if no earlier claim is WAITING for it, otherwise mark the attempt
+ * REJECTED and try the next box. All reads and writes go through a ClaimStore, and time and randomness
+ * are injected, so ProtocolSimulation runs exactly this code against a simulated cluster.
+ */
+public class ReservationProtocol {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReservationProtocol.class);
+
+	/* Claim rounds per assignShipments call; each round retries shipments that lost a race */
+	private static final int ASSIGN_ROUNDS = 3;
+
+	private final ClaimStore store;
+	private final Clock clock;
+	private final Supplier<Random> random;
+
+	public ReservationProtocol(ClaimStore store, Clock clock, Supplier<Random> random) {
+		this.store = store;
+		this.clock = clock;
+		this.random = random;
+	}
+
+	public ReservationResult placeShipment(UUID locker_id, UUID  shipment_id, Instant timestamp) throws BackendException {
+		//locker_id, shipment_id, locker_box_index, addedAt, status
+
+		Locker locker=store.selectLocker(locker_id);
+		Shipment shipment=store.selectShipment(shipment_id);
+		if (locker == null || shipment == null) {
+			return ReservationResult.NOT_FOUND;
+		}
+		store.logChange(locker_id, Collections.singleton(shipment_id));
+
+		Byte shipmentSize = shipment.getBox_size();
+		byte[] lockerBoxes = locker.getBoxes();
+
+		//Indexes of lockerBoxes with size>=shipmentsize
+		List<Integer> availableIndices = new ArrayList<>();
+		for (int i = 0; i < lockerBoxes.length; i++) {
+			if (lockerBoxes[i] >= shipmentSize) {
+				availableIndices.add(i);
+			}
+		}
+
+		// Sort by size and random when equal to minimize conflicts
+		Collections.shuffle(availableIndices, random.get());
+		availableIndices.sort(Comparator.comparingInt(index -> lockerBoxes[index]));
+		List<LockerShipment> lockerShipments= store.selectAllShipmentsFromLockerById(locker_id);
+
+		// Already placed here: claiming again would overwrite its row, free its box and count a box twice
+		if (!confirmedShipments(lockerShipments, Collections.singleton(shipment_id)).isEmpty()) {
+			return ReservationResult.CONFIRMED;
+		}
+
+		//Based on lockerShipments check which lockers from availableIndices are free, not have status  "CONFIRMED"
+
+		Set<Integer> occupiedIndices = lockerShipmentsWithStatus(lockerShipments, "CONFIRMED");
+
+		availableIndices.removeIf(occupiedIndices::contains);
+		boolean confirmed=false;
+		for (Integer index : availableIndices) {
+			 store.writeClaim(locker_id, shipment_id, index, timestamp, "WAITING");
+
+			 confirmed=validateInsert(locker_id,shipment_id,index);
+
+			 if(confirmed) {
+				 store.writeClaim(locker_id, shipment_id, index, timestamp, "CONFIRMED");
+				 store.updateOccupancy(locker_id, lockerBoxes[index], 0, 1);
+				 break;
+			 }
+			 else{
+				 store.writeClaim(locker_id, shipment_id, index, timestamp, "REJECTED");
+			 }
+		}
+		logger.debug("insertResult: "+confirmed);
+		return confirmed ? ReservationResult.CONFIRMED : ReservationResult.NO_FREE_BOX;
+	}
+
+	boolean validateInsert(UUID locker_id, UUID  shipment_id,int index) throws BackendException{
+		List<LockerShipment> lockerShipments= store.selectAllShipmentsFromLockerById(locker_id);
+
+		Instant timestamp=store.selectShipmentLocker(shipment_id,locker_id).getAddedAt();
+
+		return isFirstClaim(lockerShipments, index, timestamp);
+	}
+
+	/* A claim made at timestamp wins the box if it is not CONFIRMED and nobody is WAITING for it since earlier */
+	public static boolean isFirstClaim(List<LockerShipment> lockerShipments, int index, Instant timestamp) {
+		// Choose shipments assigned to same locker box index
+		List<LockerShipment> filteredShipments = lockerShipments.stream()
+				.filter(shipment -> shipment.getLocker_box_index() == index)
+				.collect(Collectors.toList());
+
+		// Check if any shipment has status Confirmed
+		boolean isOccupied = filteredShipments.stream()
+				.anyMatch(shipment -> shipment.getStatus().equals("CONFIRMED"));
+
+		if (isOccupied) {
+			return false;
+		}
+
+		// Check if any waiting shipment has an earlier timestamp, rejected attempts no longer hold the box
+		boolean isNotFirst = filteredShipments.stream()
+				.filter(shipment -> shipment.getStatus().equals("WAITING"))
+				.anyMatch(shipment -> shipment.getAddedAt().isBefore(timestamp));
+
+		if (isNotFirst) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/* Place many shipments into one locker: locker state is read once, claims are packed best-fit and written in batches */
+	public void assignShipments(UUID lockerId, Map<UUID, ReservationResult> results) throws BackendException {
+		Locker locker = store.selectLocker(lockerId);
+		if (locker == null) {
+			results.replaceAll((id, result) -> ReservationResult.NOT_FOUND);
+			return;
+		}
+		byte[] lockerBoxes = locker.getBoxes();
+
+		Map<UUID, Byte> shipmentSizes = new HashMap<>();
+		for (Shipment shipment : store.selectShipments(new ArrayList<>(results.keySet()))) {
+			shipmentSizes.put(shipment.getShipment_id(), shipment.getBox_size());
+		}
+
+		List<UUID> pending = new ArrayList<>();
+		for (UUID shipmentId : results.keySet()) {
+			if (shipmentSizes.containsKey(shipmentId)) {
+				pending.add(shipmentId);
+			} else {
+				results.put(shipmentId, ReservationResult.NOT_FOUND);
+			}
+		}
+
+		store.logChange(lockerId, pending);
+		List<LockerShipment> current = store.selectAllShipmentsFromLockerById(lockerId);
+		/* Shipments already placed in this locker keep their box instead of being claimed again */
+		for (UUID shipmentId : confirmedShipments(current, pending)) {
+			results.put(shipmentId, ReservationResult.CONFIRMED);
+			pending.remove(shipmentId);
+		}
+		Set<Integer> occupiedIndices = lockerShipmentsWithStatus(current, "CONFIRMED");
+
+		/* Each round claims boxes for the remaining shipments; losers of a race retry on what is left */
+		for (int round = 0; round < ASSIGN_ROUNDS && !pending.isEmpty(); round++) {
+			Map<UUID, Integer> claims = packBestFit(pending, shipmentSizes, lockerBoxes, occupiedIndices);
+			if (claims.isEmpty()) {
+				break;
+			}
+
+			/* addedAt is stored in milliseconds; a finer timestamp would find the own WAITING row earlier and lose to it */
+			Instant timestamp = clock.instant().truncatedTo(ChronoUnit.MILLIS);
+			store.writeClaims(lockerId, claims, timestamp, "WAITING", Collections.emptyMap(), null);
+
+			List<LockerShipment> lockerShipments = store.selectAllShipmentsFromLockerById(lockerId);
+			Map<UUID, Integer> won = new LinkedHashMap<>();
+			Map<UUID, Integer> lost = new LinkedHashMap<>();
+			for (Map.Entry<UUID, Integer> claim : claims.entrySet()) {
+				if (isFirstClaim(lockerShipments, claim.getValue(), timestamp)) {
+					won.put(claim.getKey(), claim.getValue());
+				} else {
+					lost.put(claim.getKey(), claim.getValue());
+				}
+			}
+
+			store.writeClaims(lockerId, won, timestamp, "CONFIRMED", lost, "REJECTED");
+
+			Map<Byte, Long> confirmedPerSize = new HashMap<>();
+			for (Map.Entry<UUID, Integer> claim : won.entrySet()) {
+				results.put(claim.getKey(), ReservationResult.CONFIRMED);
+				confirmedPerSize.merge(lockerBoxes[claim.getValue()], 1L, Long::sum);
+			}
+			for (Map.Entry<Byte, Long> entry : confirmedPerSize.entrySet()) {
+				store.updateOccupancy(lockerId, entry.getKey(), 0, entry.getValue());
+			}
+
+			occupiedIndices = lockerShipmentsWithStatus(lockerShipments, "CONFIRMED");
+			occupiedIndices.addAll(won.values());
+			pending.removeAll(won.keySet());
+		}
+
+		logger.debug("Assigned " + (results.size() - pending.size()) + " of " + results.size() + " shipments to locker " + lockerId);
+	}
+
+	static Set<UUID> confirmedShipments(List<LockerShipment> lockerShipments, Collection<UUID> shipmentIds) {
+		return lockerShipments.stream()
+				.filter(lockerShipment -> "CONFIRMED".equals(lockerShipment.getStatus()) && shipmentIds.contains(lockerShipment.getShipment_id()))
+				.map(LockerShipment::getShipment_id)
+				.collect(Collectors.toSet());
+	}
+
+	static Set<Integer> lockerShipmentsWithStatus(List<LockerShipment> lockerShipments, String status) {
+		return lockerShipments.stream()
+				.filter(lockerShipment -> status.equals(lockerShipment.getStatus()))
+				.map(LockerShipment::getLocker_box_index)
+				.collect(Collectors.toSet());
+	}
+
+	/* Best fit decreasing: largest shipments first, each into the smallest free box that fits */
+	private Map<UUID, Integer> packBestFit(List<UUID> shipmentIds, Map<UUID, Byte> shipmentSizes,
+										   byte[] lockerBoxes, Set<Integer> occupiedIndices) {
+		List<Integer> freeIndices = new ArrayList<>();
+		for (int i = 0; i < lockerBoxes.length; i++) {
+			if (!occupiedIndices.contains(i)) {
+				freeIndices.add(i);
+			}
+		}
+		// Random order among boxes of equal size to minimize conflicts with other couriers
+		Collections.shuffle(freeIndices, random.get());
+		freeIndices.sort(Comparator.comparingInt(index -> lockerBoxes[index]));
+
+		List<UUID> bySize = new ArrayList<>(shipmentIds);
+		bySize.sort(Comparator.comparing(shipmentSizes::get).reversed());
+
+		Map<UUID, Integer> claims = new LinkedHashMap<>();
+		for (UUID shipmentId : bySize) {
+			Byte size = shipmentSizes.get(shipmentId);
+			for (Iterator<Integer> it = freeIndices.iterator(); it.hasNext(); ) {
+				Integer index = it.next();
+				if (lockerBoxes[index] >= size) {
+					claims.put(shipmentId, index);
+					it.remove();
+					break;
+				}
+			}
+		}
+		return claims;
+	}
+}
@@ -0,0 +1,13 @@
+package cassdemo.backend;
+
+/* Outcome of placing a shipment into a locker */
+public enum ReservationResult {
+	/* The shipment holds a CONFIRMED box */
+	CONFIRMED,
+	/* The locker or the shipment does not exist */
+	NOT_FOUND,
+	/* Every box large enough for the shipment is taken */
+	NO_FREE_BOX,
+	/* Rejected by admission control before touching the cluster, safe to retry later */
+	OVERLOADED
+}
@@ -0,0 +1,101 @@
+package cassdemo.backend;
+
+import com.datastax.driver.core.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Logs every statement execution slower than a threshold: statement name, key values bound to it,
+ * coordinator that served it, how many of its attempts were slow so far and elapsed time. Registered as a
+ * driver LatencyTracker, which is called once per attempt, so slow retries and speculative executions show
+ * up separately. The tracker is not told which attempt it sees, and fast attempts are not counted, so
+ * slow_attempts_so_far is not the attempt number.
+ * Fast attempts return before touching any shared state, this runs on the driver's hot path.
+ * The threshold can be changed at runtime.
+ */
+public class SlowStatementLog implements LatencyTracker {
+
+	private static final Logger logger = LoggerFactory.getLogger(SlowStatementLog.class);
+
+	private volatile long thresholdNanos;
+
+	private final Map<PreparedStatement, String> names = new ConcurrentHashMap<>();
+	/* Slow attempts per statement; weak keys, a statement is forgotten once the driver is done with it */
+	private final Map<Statement, AtomicInteger> slowAttempts = Collections.synchronizedMap(new WeakHashMap<>());
+
+	public SlowStatementLog(long thresholdMillis) {
+		setThresholdMillis(thresholdMillis);
+	}
+
+	public void setThresholdMillis(long thresholdMillis) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	public long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	void register(PreparedStatement ps, String name) {
+		names.put(ps, name);
+	}
+
+	String nameOf(Statement statement) {
+		if (statement instanceof BoundStatement) {
+			return names.getOrDefault(((BoundStatement) statement).preparedStatement(), "unnamed");
+		}
+		if (statement instanceof BatchStatement) {
+			Collection<Statement> inner = ((BatchStatement) statement).getStatements();
+			return "BATCH[" + inner.size() + "] of " + (inner.isEmpty() ? "nothing" : nameOf(inner.iterator().next()));
+		}
+		return statement.getClass().getSimpleName();
+	}
+
+	@Override
+	public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+		if (newLatencyNanos < thresholdNanos) {
+			return;
+		}
+		int slowSoFar = slowAttempts.computeIfAbsent(statement, k -> new AtomicInteger(0)).incrementAndGet();
+
+		logger.warn("Slow statement " + nameOf(statement)
+				+ " keys=" + keysOf(statement)
+				+ " coordinator=" + (host == null ? "none" : host.getAddress())
+				+ " slow_attempts_so_far=" + slowSoFar
+				+ " elapsed=" + TimeUnit.NANOSECONDS.toMillis(newLatencyNanos) + "ms"
+				+ (exception == null ? "" : " error=" + exception.getClass().getSimpleName()));
+	}
+
+	/* Values bound to *_id variables, i.e. the partition and clustering keys of this schema */
+	private static String keysOf(Statement statement) {
+		if (statement instanceof BatchStatement) {
+			Collection<Statement> inner = ((BatchStatement) statement).getStatements();
+			return inner.isEmpty() ? "{}" : keysOf(inner.iterator().next());
+		}
+		if (!(statement instanceof BoundStatement)) {
+			return "{}";
+		}
+		BoundStatement bs = (BoundStatement) statement;
+		Map<String, Object> keys = new LinkedHashMap<>();
+		ColumnDefinitions variables = bs.preparedStatement().getVariables();
+		for (int i = 0; i < variables.size(); i++) {
+			String name = variables.getName(i);
+			if (name.endsWith("_id") && bs.isSet(i)) {
+				keys.putIfAbsent(name, bs.getObject(i));
+			}
+		}
+		return keys.toString();
+	}
+
+	@Override
+	public void onRegister(Cluster cluster) {
+	}
+
+	@Override
+	public void onUnregister(Cluster cluster) {
+	}
+}
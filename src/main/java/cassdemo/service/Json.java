@@ -0,0 +1,113 @@
+package cassdemo.service;
+
+import cassdemo.backend.OccupancySummary;
+import cassdemo.backend.ReservationResult;
+import cassdemo.tables.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/* Minimal JSON rendering of the entities served by ReservationService */
+final class Json {
+
+	private Json() {
+	}
+
+	static String string(Object value) {
+		if (value == null) {
+			return "null";
+		}
+		String s = value.toString();
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"' -> sb.append("\\\"");
+				case '\\' -> sb.append("\\\\");
+				case '\n' -> sb.append("\\n");
+				case '\r' -> sb.append("\\r");
+				case '\t' -> sb.append("\\t");
+				default -> {
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	static <T> String array(Collection<T> items, Function<T, String> render) {
+		StringBuilder sb = new StringBuilder("[");
+		for (T item : items) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append(render.apply(item));
+		}
+		return sb.append(']').toString();
+	}
+
+	static String error(String message) {
+		return "{\"error\":" + string(message) + "}";
+	}
+
+	static String result(ReservationResult result) {
+		return "{\"result\":" + string(result) + "}";
+	}
+
+	static String results(Map<UUID, ReservationResult> results) {
+		return array(results.entrySet(), e -> "{\"shipment_id\":" + string(e.getKey()) + ",\"result\":" + string(e.getValue()) + "}");
+	}
+
+	static String locker(Locker locker) {
+		return "{\"locker_id\":" + string(locker.getLocker_id())
+				+ ",\"locker_name\":" + string(locker.getLocker_name())
+				+ ",\"locker_boxes\":" + Arrays.toString(locker.getBoxes()) + "}";
+	}
+
+	static String shipment(Shipment shipment) {
+		return "{\"shipment_id\":" + string(shipment.getShipment_id())
+				+ ",\"shipment_name\":" + string(shipment.getShipment_name())
+				+ ",\"box_size\":" + shipment.getBox_size() + "}";
+	}
+
+	static String lockerShipment(LockerShipment row) {
+		return "{\"shipment_id\":" + string(row.getShipment_id())
+				+ ",\"locker_box_index\":" + row.getLocker_box_index()
+				+ ",\"addedAt\":" + string(row.getAddedAt())
+				+ ",\"status\":" + string(row.getStatus()) + "}";
+	}
+
+	static String placement(ShipmentPlacement placement) {
+		return "{\"shipment_id\":" + string(placement.getShipment_id())
+				+ ",\"locker_id\":" + string(placement.getLocker_id())
+				+ ",\"locker_box_index\":" + placement.getLocker_box_index()
+				+ ",\"confirmedAt\":" + string(placement.getConfirmedAt()) + "}";
+	}
+
+	static String shipmentLocker(ShipmentLocker row) {
+		return "{\"locker_id\":" + string(row.getLocker_id())
+				+ ",\"locker_box_index\":" + row.getLocker_box_index()
+				+ ",\"addedAt\":" + string(row.getAddedAt())
+				+ ",\"status\":" + string(row.getStatus()) + "}";
+	}
+
+	static String occupancy(OccupancySummary summary) {
+		StringBuilder sb = new StringBuilder("{\"locker_id\":" + string(summary.getLockerId()) + ",\"sizes\":[");
+		for (int size = 1; size <= OccupancySummary.MAX_BOX_SIZE; size++) {
+			if (size > 1) {
+				sb.append(',');
+			}
+			sb.append("{\"box_size\":").append(size)
+					.append(",\"free\":").append(summary.getFree(size))
+					.append(",\"occupied\":").append(summary.getOccupied(size)).append('}');
+		}
+		return sb.append("]}").toString();
+	}
+}
@@ -0,0 +1,383 @@
+package cassdemo.service;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.ReservationBackend;
+import cassdemo.backend.ReservationResult;
+import cassdemo.shard.ShardCoordinator;
+import cassdemo.tables.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * HTTP front end for terminals, on top of a ReservationBackend.
+ *
+ *   GET    /lockers                          all lockers
+ *   GET    /lockers/{id}                     locker with its locker_shipments rows
+ *   GET    /shipments                        all shipments
+ *   GET    /shipments/{id}                   shipment with its shipment_lockers rows
+ *   GET    /shipments/{id}/locker            locker currently holding the shipment
+ *   GET    /occupancy                        free / occupied boxes per size for every locker
+ *   GET    /ready                            200 when the backend takes requests, 503 otherwise
+ *   POST   /reservations?locker=&shipment=   reserve a box
+ *   POST   /lockers/{id}/shipments?ids=a,b   reserve boxes for many shipments in one locker
+ *   DELETE /reservations?locker=&shipment=   release a shipment from a locker
+ *
+ * Connections are served by the JDK server's single selector thread, which only parses the request
+ * and hands it to a bounded worker pool; the worker sends the response. When the worker queue is full
+ * the request is answered 503 straight away instead of piling up. Keep-alive connections may send
+ * requests back to back, the JDK server answers them in order.
+ *
+ * With a ShardCoordinator the service is one worker of a sharded ring: reservations and releases for
+ * a locker owned by another worker are forwarded to it, so each locker's claims are serialized by the
+ * admission queue of a single process instead of racing across processes. Forwarded requests carry
+ * FORWARDED_HEADER and are always served where they arrive, even if the rings briefly disagree.
+ * A request whose owner refuses the connection is served locally.
+ */
+public class ReservationService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReservationService.class);
+
+	static {
+		/* Read once when the JDK server is first used; with Nagle on, every small response waits for a delayed ACK */
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/* Pending TCP connections; the OS default is small enough to refuse bursts of new terminals */
+	private static final int CONNECTION_BACKLOG = 1024;
+
+	private static final String FORWARDED_HEADER = "X-Forwarded-By";
+	private static final Duration FORWARD_CONNECT_TIMEOUT = Duration.ofSeconds(1);
+	private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(10);
+
+	private final ReservationBackend backend;
+	private final ShardCoordinator shards;
+	private final HttpClient forwarder;
+	private final HttpServer server;
+	private final ThreadPoolExecutor workers;
+	private final LongAdder queueRejections = new LongAdder();
+
+	private static final class Reply {
+		final int status;
+		final String body;
+
+		Reply(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	private interface Action {
+		Reply run() throws BackendException;
+	}
+
+	public ReservationService(ReservationBackend backend, InetSocketAddress address, int workerThreads, int queueCapacity) throws IOException {
+		this(backend, null, address, workerThreads, queueCapacity);
+	}
+
+	/* shards may be null, then every request is served by this process */
+	public ReservationService(ReservationBackend backend, ShardCoordinator shards, InetSocketAddress address,
+							  int workerThreads, int queueCapacity) throws IOException {
+		this.backend = backend;
+		this.shards = shards;
+		this.forwarder = shards == null ? null : HttpClient.newBuilder().connectTimeout(FORWARD_CONNECT_TIMEOUT).build();
+		AtomicInteger threadCount = new AtomicInteger(0);
+		this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "reservation-worker-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		this.server = HttpServer.create(address, CONNECTION_BACKLOG);
+		this.server.createContext("/", this::handle);
+	}
+
+	public static ReservationService fromProperties(ReservationBackend backend, Properties properties) throws IOException {
+		return fromProperties(backend, null, properties);
+	}
+
+	public static ReservationService fromProperties(ReservationBackend backend, ShardCoordinator shards, Properties properties) throws IOException {
+		return new ReservationService(backend, shards,
+				new InetSocketAddress(Integer.parseInt(properties.getProperty("service.port", "8080"))),
+				Integer.parseInt(properties.getProperty("service.workers", "32")),
+				Integer.parseInt(properties.getProperty("service.queue_capacity", "256")));
+	}
+
+	public void start() {
+		server.start();
+		logger.info("Reservation service listening on port " + getPort());
+	}
+
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		workers.shutdown();
+		try {
+			workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Reservation service stopped");
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/* Requests answered 503 because the worker queue was full */
+	public long getQueueRejections() {
+		return queueRejections.sum();
+	}
+
+	/* Runs on the selector thread, must not block */
+	private void handle(HttpExchange exchange) {
+		/* Answered here rather than by a worker, so readiness stays accurate when the workers are saturated */
+		if (exchange.getRequestURI().getPath().equals("/ready")) {
+			send(exchange, backend.isReady() ? new Reply(200, "{\"ready\":true}") : new Reply(503, "{\"ready\":false}"));
+			return;
+		}
+
+		Action action;
+		try {
+			action = route(exchange.getRequestMethod(), exchange.getRequestURI());
+		} catch (IllegalArgumentException e) {
+			send(exchange, new Reply(400, Json.error(e.getMessage())));
+			return;
+		}
+		if (action == null) {
+			send(exchange, new Reply(404, Json.error("No such endpoint")));
+			return;
+		}
+
+		if (shards != null && !exchange.getRequestHeaders().containsKey(FORWARDED_HEADER)) {
+			UUID lockerId = lockerOf(exchange.getRequestMethod(), exchange.getRequestURI());
+			ReservationWorker owner = lockerId == null ? null : shards.remoteOwnerOf(lockerId);
+			if (owner != null) {
+				forward(exchange, owner, action);
+				return;
+			}
+		}
+
+		dispatch(exchange, action);
+	}
+
+	private void dispatch(HttpExchange exchange, Action action) {
+		try {
+			workers.execute(() -> send(exchange, execute(action)));
+		} catch (RejectedExecutionException e) {
+			queueRejections.increment();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, new Reply(503, Json.error("Service overloaded")));
+		}
+	}
+
+	/*
+	 * Passes the request to the locker's owner without holding a worker thread. Only a refused connection
+	 * falls back to serving locally; after a timeout the owner may still be running the request.
+	 */
+	private void forward(HttpExchange exchange, ReservationWorker owner, Action action) {
+		URI uri = exchange.getRequestURI();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(owner.getEndpoint() + uri.getRawPath()
+						+ (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery())))
+				.method(exchange.getRequestMethod(), HttpRequest.BodyPublishers.noBody())
+				.header(FORWARDED_HEADER, shards.getSelf().getWorker_id())
+				.timeout(FORWARD_TIMEOUT)
+				.build();
+
+		forwarder.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+			if (error == null) {
+				response.headers().firstValue("Retry-After").ifPresent(value -> exchange.getResponseHeaders().set("Retry-After", value));
+				send(exchange, new Reply(response.statusCode(), response.body()));
+				return;
+			}
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+				logger.warn("Owner " + owner.getWorker_id() + " unreachable, serving locally: " + cause);
+				dispatch(exchange, action);
+			} else if (cause instanceof HttpTimeoutException) {
+				send(exchange, new Reply(504, Json.error("Owner " + owner.getWorker_id() + " did not answer in time")));
+			} else {
+				logger.warn("Forward to " + owner.getWorker_id() + " failed: " + cause);
+				send(exchange, new Reply(502, Json.error("Forward to " + owner.getWorker_id() + " failed")));
+			}
+		});
+	}
+
+	/* Locker written by the request, for the requests that are routed to the locker's owner */
+	private static UUID lockerOf(String method, URI uri) {
+		String[] path = uri.getPath().replaceAll("^/+|/+$", "").split("/");
+		if ((method.equals("POST") || method.equals("DELETE")) && path.length == 1 && path[0].equals("reservations")) {
+			return uuid(parseQuery(uri.getRawQuery()).get("locker"));
+		}
+		if (method.equals("POST") && path.length == 3 && path[0].equals("lockers") && path[2].equals("shipments")) {
+			return uuid(path[1]);
+		}
+		return null;
+	}
+
+	private Action route(String method, URI uri) {
+		String[] path = uri.getPath().replaceAll("^/+|/+$", "").split("/");
+		Map<String, String> query = parseQuery(uri.getRawQuery());
+
+		switch (method) {
+			case "GET" -> {
+				if (path.length == 1 && path[0].equals("lockers")) {
+					return () -> new Reply(200, Json.array(backend.selectAllLockers(), Json::locker));
+				}
+				if (path.length == 2 && path[0].equals("lockers")) {
+					UUID lockerId = uuid(path[1]);
+					return () -> lockerDetails(lockerId);
+				}
+				if (path.length == 1 && path[0].equals("shipments")) {
+					return () -> new Reply(200, Json.array(backend.selectAllShipments(), Json::shipment));
+				}
+				if (path.length == 2 && path[0].equals("shipments")) {
+					UUID shipmentId = uuid(path[1]);
+					return () -> shipmentDetails(shipmentId);
+				}
+				if (path.length == 3 && path[0].equals("shipments") && path[2].equals("locker")) {
+					UUID shipmentId = uuid(path[1]);
+					return () -> {
+						ShipmentPlacement placement = backend.findConfirmedLocker(shipmentId);
+						return placement == null
+								? new Reply(404, Json.error("Shipment is not in any locker"))
+								: new Reply(200, Json.placement(placement));
+					};
+				}
+				if (path.length == 1 && path[0].equals("occupancy")) {
+					return () -> new Reply(200, Json.array(backend.getOccupancySummaries().values(), Json::occupancy));
+				}
+			}
+			case "POST" -> {
+				if (path.length == 1 && path[0].equals("reservations")) {
+					UUID lockerId = uuid(query.get("locker"));
+					UUID shipmentId = uuid(query.get("shipment"));
+					return () -> {
+						ReservationResult result = backend.insertShipmentIntoLocker(lockerId, shipmentId);
+						return new Reply(statusOf(result), Json.result(result));
+					};
+				}
+				if (path.length == 3 && path[0].equals("lockers") && path[2].equals("shipments")) {
+					UUID lockerId = uuid(path[1]);
+					List<UUID> shipmentIds = new ArrayList<>();
+					for (String id : Objects.requireNonNullElse(query.get("ids"), "").split(",")) {
+						shipmentIds.add(uuid(id));
+					}
+					return () -> new Reply(200, Json.results(backend.assignShipmentsToLocker(lockerId, shipmentIds)));
+				}
+			}
+			case "DELETE" -> {
+				if (path.length == 1 && path[0].equals("reservations")) {
+					UUID lockerId = uuid(query.get("locker"));
+					UUID shipmentId = uuid(query.get("shipment"));
+					return () -> backend.releaseShipmentFromLocker(lockerId, shipmentId)
+							? new Reply(200, "{\"released\":true}")
+							: new Reply(404, Json.error("Shipment is not in this locker"));
+				}
+			}
+			default -> {
+			}
+		}
+		return null;
+	}
+
+	private Reply lockerDetails(UUID lockerId) throws BackendException {
+		Locker locker = backend.selectLocker(lockerId);
+		if (locker == null) {
+			return new Reply(404, Json.error("No such locker"));
+		}
+		String shipments = Json.array(backend.selectAllShipmentsFromLockerById(lockerId), Json::lockerShipment);
+		return new Reply(200, "{\"locker\":" + Json.locker(locker) + ",\"shipments\":" + shipments + "}");
+	}
+
+	private Reply shipmentDetails(UUID shipmentId) throws BackendException {
+		Shipment shipment = backend.selectShipment(shipmentId);
+		if (shipment == null) {
+			return new Reply(404, Json.error("No such shipment"));
+		}
+		String lockers = Json.array(backend.selectAllLockersFromShipmentById(shipmentId), Json::shipmentLocker);
+		return new Reply(200, "{\"shipment\":" + Json.shipment(shipment) + ",\"lockers\":" + lockers + "}");
+	}
+
+	private static int statusOf(ReservationResult result) {
+		return switch (result) {
+			case CONFIRMED -> 200;
+			case NOT_FOUND -> 404;
+			case NO_FREE_BOX -> 409;
+			case OVERLOADED -> 503;
+		};
+	}
+
+	private static Reply execute(Action action) {
+		try {
+			return action.run();
+		} catch (BackendException e) {
+			logger.error("Request failed", e);
+			return new Reply(500, Json.error(e.getMessage()));
+		} catch (RuntimeException e) {
+			logger.error("Request failed", e);
+			return new Reply(500, Json.error("Internal error"));
+		}
+	}
+
+	private static void send(HttpExchange exchange, Reply reply) {
+		byte[] body = reply.body.getBytes(StandardCharsets.UTF_8);
+		try (OutputStream out = exchange.getResponseBody()) {
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(reply.status, body.length);
+			out.write(body);
+		} catch (IOException e) {
+			logger.debug("Could not send response: " + e.getMessage());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static UUID uuid(String value) {
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing id");
+		}
+		try {
+			return UUID.fromString(value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid UUID format: " + value);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return query;
+	}
+}
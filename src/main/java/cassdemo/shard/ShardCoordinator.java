@@ -0,0 +1,151 @@
+package cassdemo.shard;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.tables.ReservationWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Membership of one reservation worker in a ShardRing stored in the reservation_workers table.
+ *
+ * Every heartbeat rewrites this worker's row with a TTL and rebuilds the ring from the rows of all
+ * workers, so a crashed worker drops out once its row expires and a stopped one as soon as close()
+ * deletes it. A new worker takes part in the ring only handoff_ms after joined_at. Every worker has
+ * read its row by then and switches at that instant, so the previous owner stops getting a locker's
+ * requests when the new owner starts serving them.
+ *
+ * The ring only decides where requests go. During clock skew, a membership change or a failed forward,
+ * two workers can still serve the same locker, and the WAITING / CONFIRMED protocol keeps that correct.
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+	private final BackendSession session;
+	private final ReservationWorker self;
+	private final long heartbeatMillis;
+	private final int ttlSeconds;
+	private final long handoffMillis;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "shard-heartbeat");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private ScheduledFuture<?> activation;
+
+	private volatile ShardRing ring = new ShardRing(Collections.emptyList());
+
+	public ShardCoordinator(BackendSession session, String ring, String workerId, String endpoint,
+							long heartbeatMillis, int ttlSeconds, long handoffMillis) {
+		if (TimeUnit.SECONDS.toMillis(ttlSeconds) <= heartbeatMillis || handoffMillis <= heartbeatMillis) {
+			throw new IllegalArgumentException("shard.ttl_s and shard.handoff_ms must be longer than shard.heartbeat_ms");
+		}
+		this.session = session;
+		this.heartbeatMillis = heartbeatMillis;
+		this.ttlSeconds = ttlSeconds;
+		this.handoffMillis = handoffMillis;
+		this.self = new ReservationWorker();
+		self.setRing(ring);
+		self.setWorker_id(workerId);
+		self.setEndpoint(endpoint);
+	}
+
+	public static ShardCoordinator fromProperties(BackendSession session, Properties properties, int port) {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "localhost";
+		}
+		return new ShardCoordinator(session,
+				properties.getProperty("shard.ring", "reservations"),
+				properties.getProperty("shard.worker_id", host + ":" + port),
+				properties.getProperty("shard.endpoint", "http://" + host + ":" + port),
+				Long.parseLong(properties.getProperty("shard.heartbeat_ms", "2000")),
+				Integer.parseInt(properties.getProperty("shard.ttl_s", "10")),
+				Long.parseLong(properties.getProperty("shard.handoff_ms", "6000")));
+	}
+
+	public void start() throws BackendException {
+		self.setJoined_at(Instant.now());
+		session.heartbeatReservationWorker(self, ttlSeconds);
+		refresh();
+		scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+		logger.info("Worker " + self.getWorker_id() + " joined ring " + self.getRing() + ", serving lockers in " + handoffMillis + " ms");
+	}
+
+	private void heartbeat() {
+		try {
+			session.heartbeatReservationWorker(self, ttlSeconds);
+			refresh();
+		} catch (BackendException e) {
+			/* Keep routing by the last ring; our row outlives a few missed heartbeats */
+			logger.warn("Shard heartbeat failed: " + e.getMessage());
+		}
+	}
+
+	private synchronized void refresh() throws BackendException {
+		Instant now = Instant.now();
+		List<ReservationWorker> active = new ArrayList<>();
+		Instant nextActivation = null;
+		for (ReservationWorker worker : session.selectReservationWorkers(self.getRing())) {
+			Instant activeAt = worker.getJoined_at().plusMillis(handoffMillis);
+			if (!activeAt.isAfter(now)) {
+				active.add(worker);
+			} else if (nextActivation == null || activeAt.isBefore(nextActivation)) {
+				nextActivation = activeAt;
+			}
+		}
+
+		/* Rebuild exactly when the next worker becomes active rather than on the following heartbeat */
+		if (nextActivation != null && (activation == null || activation.isDone())) {
+			activation = scheduler.schedule(this::heartbeat, Math.max(0, nextActivation.toEpochMilli() - now.toEpochMilli()), TimeUnit.MILLISECONDS);
+		}
+
+		if (!ring.sameMembers(active)) {
+			ring = new ShardRing(active);
+			logger.info("Ring " + self.getRing() + " changed: " + ring);
+		}
+	}
+
+	public ReservationWorker ownerOf(UUID lockerId) {
+		return ring.ownerOf(lockerId);
+	}
+
+	/* Worker to forward the locker's requests to, or null when this worker serves them itself */
+	public ReservationWorker remoteOwnerOf(UUID lockerId) {
+		ReservationWorker owner = ring.ownerOf(lockerId);
+		return owner == null || owner.getWorker_id().equals(self.getWorker_id()) ? null : owner;
+	}
+
+	public ReservationWorker getSelf() {
+		return self;
+	}
+
+	public ShardRing getRing() {
+		return ring;
+	}
+
+	/* Leave the ring; other workers take over this worker's lockers on their next heartbeat */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		try {
+			session.deleteReservationWorker(self.getRing(), self.getWorker_id());
+		} catch (BackendException e) {
+			logger.warn("Could not leave ring, it expires in " + ttlSeconds + " s: " + e.getMessage());
+		}
+		logger.info("Worker " + self.getWorker_id() + " left ring " + self.getRing());
+	}
+}
@@ -0,0 +1,91 @@
+package cassdemo.shard;
+
+import cassdemo.tables.ReservationWorker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * Consistent-hash ring of reservation workers. Every worker is placed at VIRTUAL_NODES points, a locker
+ * belongs to the first point at or after the hash of its locker_id. Adding or removing a worker moves only
+ * the lockers between its points and their predecessors. The placement depends only on worker_id, so every
+ * process building a ring from the same members agrees on every owner.
+ */
+public class ShardRing {
+
+	private static final int VIRTUAL_NODES = 64;
+
+	private final NavigableMap<Long, ReservationWorker> points = new TreeMap<>();
+	private final List<ReservationWorker> members;
+
+	public ShardRing(Collection<ReservationWorker> workers) {
+		List<ReservationWorker> sorted = new ArrayList<>(workers);
+		sorted.sort(Comparator.comparing(ReservationWorker::getWorker_id));
+		this.members = Collections.unmodifiableList(sorted);
+		for (ReservationWorker worker : sorted) {
+			long seed = hash(worker.getWorker_id().getBytes(StandardCharsets.UTF_8));
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				/* On a collision the worker with the smaller id keeps the point */
+				points.putIfAbsent(mix(seed + i), worker);
+			}
+		}
+	}
+
+	/* Owner of the locker, or null when the ring is empty */
+	public ReservationWorker ownerOf(UUID lockerId) {
+		if (points.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, ReservationWorker> point = points.ceilingEntry(mix(lockerId.getMostSignificantBits() ^ mix(lockerId.getLeastSignificantBits())));
+		return (point != null ? point : points.firstEntry()).getValue();
+	}
+
+	public List<ReservationWorker> getMembers() {
+		return members;
+	}
+
+	public boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	/* Same workers in the same places; a refresh that only renewed heartbeats keeps the old ring */
+	boolean sameMembers(Collection<ReservationWorker> workers) {
+		if (workers.size() != members.size()) {
+			return false;
+		}
+		Map<String, String> endpoints = new HashMap<>();
+		for (ReservationWorker worker : members) {
+			endpoints.put(worker.getWorker_id(), worker.getEndpoint());
+		}
+		for (ReservationWorker worker : workers) {
+			if (!Objects.equals(endpoints.get(worker.getWorker_id()), worker.getEndpoint())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long hash(byte[] bytes) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (byte b : bytes) {
+			h = mix(h ^ b);
+		}
+		return h;
+	}
+
+	/* splitmix64 finalizer, spreads sequential and random-looking ids evenly over the ring */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("ShardRing{");
+		for (ReservationWorker worker : members) {
+			sb.append(sb.length() > 10 ? ", " : "").append(worker.getWorker_id()).append('=').append(worker.getEndpoint());
+		}
+		return sb.append('}').toString();
+	}
+}
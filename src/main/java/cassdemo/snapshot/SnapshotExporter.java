@@ -0,0 +1,71 @@
+package cassdemo.snapshot;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.tables.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+
+/*
+ * Streams lockers, shipments, locker_shipments and shipment_lockers into a binary snapshot file
+ * (see SnapshotFormat). Tables are read page by page, so memory use does not grow with the table size.
+ * The file is written next to the target and moved into place once complete.
+ */
+public class SnapshotExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotExporter.class);
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final BackendSession session;
+
+	public SnapshotExporter(BackendSession session) {
+		this.session = session;
+	}
+
+	public long export(Path target) throws BackendException {
+		/* Taken before the first read, so catching up from this point covers rows written during the export */
+		Instant createdAt = Instant.now();
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		long records = 0;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))) {
+			SnapshotFormat.writeHeader(out, createdAt);
+			for (Locker locker : session.scanAllLockers()) {
+				SnapshotFormat.writeLocker(out, locker);
+				records++;
+			}
+			for (Shipment shipment : session.scanAllShipments()) {
+				SnapshotFormat.writeShipment(out, shipment);
+				records++;
+			}
+			for (LockerShipment row : session.scanAllLockerShipments()) {
+				SnapshotFormat.writeLockerShipment(out, row);
+				records++;
+			}
+			for (ShipmentLocker row : session.scanAllShipmentLockers()) {
+				SnapshotFormat.writeShipmentLocker(out, row);
+				records++;
+			}
+			out.writeByte(SnapshotFormat.TAG_END);
+		} catch (IOException e) {
+			throw new BackendException("Could not write snapshot. " + e.getMessage() + ".", e);
+		}
+
+		try {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new BackendException("Could not move snapshot into place. " + e.getMessage() + ".", e);
+		}
+
+		logger.info("Snapshot with " + records + " records exported to " + target);
+		return records;
+	}
+}
@@ -0,0 +1,245 @@
+package cassdemo.snapshot;
+
+import cassdemo.tables.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/*
+ * Binary snapshot layout (big endian):
+ *
+ *   header:  magic "PCZS" | int version | long createdAt (epoch millis)
+ *   records: byte tag | record body, repeated until TAG_END
+ *
+ * Record bodies:
+ *   TAG_LOCKER           uuid locker_id | string locker_name | short n | n x byte box size
+ *   TAG_SHIPMENT         uuid shipment_id | string shipment_name | byte box_size
+ *   TAG_LOCKER_SHIPMENT  uuid locker_id | uuid shipment_id | int locker_box_index | long addedAt | status
+ *   TAG_SHIPMENT_LOCKER  uuid shipment_id | uuid locker_id | int locker_box_index | long addedAt | status
+ *
+ * uuid is two longs, string is an unsigned short length followed by UTF-8 bytes (length 0xFFFF = null),
+ * nullable numbers use NULL_INT / NULL_LONG / NULL_BYTE, status is a one byte code (STATUS_OTHER is followed by a string).
+ */
+public final class SnapshotFormat {
+
+	public static final int MAGIC = 0x50435A53; // "PCZS"
+	public static final int VERSION = 1;
+
+	public static final byte TAG_END = 0;
+	public static final byte TAG_LOCKER = 1;
+	public static final byte TAG_SHIPMENT = 2;
+	public static final byte TAG_LOCKER_SHIPMENT = 3;
+	public static final byte TAG_SHIPMENT_LOCKER = 4;
+
+	static final int NULL_STRING = 0xFFFF;
+	static final int NULL_INT = Integer.MIN_VALUE;
+	static final long NULL_LONG = Long.MIN_VALUE;
+	static final byte NULL_BYTE = Byte.MIN_VALUE;
+
+	static final byte STATUS_NULL = 0;
+	static final byte STATUS_WAITING = 1;
+	static final byte STATUS_CONFIRMED = 2;
+	static final byte STATUS_REJECTED = 3;
+	static final byte STATUS_OTHER = 127;
+
+	private SnapshotFormat() {
+	}
+
+	/* write */
+
+	static void writeHeader(DataOutputStream out, Instant createdAt) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(createdAt.toEpochMilli());
+	}
+
+	static void writeLocker(DataOutputStream out, Locker locker) throws IOException {
+		out.writeByte(TAG_LOCKER);
+		writeUUID(out, locker.getLocker_id());
+		writeString(out, locker.getLocker_name());
+		byte[] boxes = locker.getBoxes();
+		out.writeShort(boxes.length);
+		out.write(boxes);
+	}
+
+	static void writeShipment(DataOutputStream out, Shipment shipment) throws IOException {
+		out.writeByte(TAG_SHIPMENT);
+		writeUUID(out, shipment.getShipment_id());
+		writeString(out, shipment.getShipment_name());
+		out.writeByte(shipment.getBox_size() == null ? NULL_BYTE : shipment.getBox_size());
+	}
+
+	static void writeLockerShipment(DataOutputStream out, LockerShipment row) throws IOException {
+		out.writeByte(TAG_LOCKER_SHIPMENT);
+		writeUUID(out, row.getLocker_id());
+		writeUUID(out, row.getShipment_id());
+		writeStatusRow(out, row.getLocker_box_index(), row.getAddedAt(), row.getStatus());
+	}
+
+	static void writeShipmentLocker(DataOutputStream out, ShipmentLocker row) throws IOException {
+		out.writeByte(TAG_SHIPMENT_LOCKER);
+		writeUUID(out, row.getShipment_id());
+		writeUUID(out, row.getLocker_id());
+		writeStatusRow(out, row.getLocker_box_index(), row.getAddedAt(), row.getStatus());
+	}
+
+	private static void writeStatusRow(DataOutputStream out, Integer index, Instant addedAt, String status) throws IOException {
+		out.writeInt(index == null ? NULL_INT : index);
+		out.writeLong(addedAt == null ? NULL_LONG : addedAt.toEpochMilli());
+		byte code = statusCode(status);
+		out.writeByte(code);
+		if (code == STATUS_OTHER) {
+			writeString(out, status);
+		}
+	}
+
+	private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeShort(NULL_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length >= NULL_STRING) {
+			throw new IOException("String too long for snapshot: " + bytes.length + " bytes");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte statusCode(String status) {
+		if (status == null) {
+			return STATUS_NULL;
+		}
+		return switch (status) {
+			case "WAITING" -> STATUS_WAITING;
+			case "CONFIRMED" -> STATUS_CONFIRMED;
+			case "REJECTED" -> STATUS_REJECTED;
+			default -> STATUS_OTHER;
+		};
+	}
+
+	/* read - absolute reads at a record offset (pointing just past the tag byte) */
+
+	static Locker readLocker(ByteBuffer buf, int offset) {
+		buf = buf.duplicate();
+		buf.position(offset);
+		Locker locker = new Locker();
+		locker.setLocker_id(readUUID(buf));
+		locker.setLocker_name(readString(buf));
+		int n = Short.toUnsignedInt(buf.getShort());
+		byte[] boxes = new byte[n];
+		buf.get(boxes);
+		locker.setLocker_box_layout(boxes);
+		return locker;
+	}
+
+	static Shipment readShipment(ByteBuffer buf, int offset) {
+		buf = buf.duplicate();
+		buf.position(offset);
+		Shipment shipment = new Shipment();
+		shipment.setShipment_id(readUUID(buf));
+		shipment.setShipment_name(readString(buf));
+		byte size = buf.get();
+		shipment.setBox_size(size == NULL_BYTE ? null : size);
+		return shipment;
+	}
+
+	static LockerShipment readLockerShipment(ByteBuffer buf, int offset) {
+		buf = buf.duplicate();
+		buf.position(offset);
+		LockerShipment row = new LockerShipment();
+		row.setLocker_id(readUUID(buf));
+		row.setShipment_id(readUUID(buf));
+		row.setLocker_box_index(readInt(buf));
+		row.setAddedAt(readInstant(buf));
+		row.setStatus(readStatus(buf));
+		return row;
+	}
+
+	static ShipmentLocker readShipmentLocker(ByteBuffer buf, int offset) {
+		buf = buf.duplicate();
+		buf.position(offset);
+		ShipmentLocker row = new ShipmentLocker();
+		row.setShipment_id(readUUID(buf));
+		row.setLocker_id(readUUID(buf));
+		row.setLocker_box_index(readInt(buf));
+		row.setAddedAt(readInstant(buf));
+		row.setStatus(readStatus(buf));
+		return row;
+	}
+
+	/* Advance past the body of a record with the given tag, without decoding it */
+	static void skipRecord(ByteBuffer buf, byte tag) throws IOException {
+		switch (tag) {
+			case TAG_LOCKER -> {
+				buf.position(buf.position() + 16);
+				skipString(buf);
+				int n = Short.toUnsignedInt(buf.getShort());
+				buf.position(buf.position() + n);
+			}
+			case TAG_SHIPMENT -> {
+				buf.position(buf.position() + 16);
+				skipString(buf);
+				buf.position(buf.position() + 1);
+			}
+			case TAG_LOCKER_SHIPMENT, TAG_SHIPMENT_LOCKER -> {
+				buf.position(buf.position() + 16 + 16 + 4 + 8);
+				if (buf.get() == STATUS_OTHER) {
+					skipString(buf);
+				}
+			}
+			default -> throw new IOException("Corrupted snapshot: unknown record tag " + tag + " at " + (buf.position() - 1));
+		}
+	}
+
+	static UUID readUUID(ByteBuffer buf) {
+		return new UUID(buf.getLong(), buf.getLong());
+	}
+
+	private static Integer readInt(ByteBuffer buf) {
+		int value = buf.getInt();
+		return value == NULL_INT ? null : value;
+	}
+
+	private static Instant readInstant(ByteBuffer buf) {
+		long value = buf.getLong();
+		return value == NULL_LONG ? null : Instant.ofEpochMilli(value);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int length = Short.toUnsignedInt(buf.getShort());
+		if (length == NULL_STRING) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buf) {
+		int length = Short.toUnsignedInt(buf.getShort());
+		if (length != NULL_STRING) {
+			buf.position(buf.position() + length);
+		}
+	}
+
+	private static String readStatus(ByteBuffer buf) {
+		byte code = buf.get();
+		return switch (code) {
+			case STATUS_NULL -> null;
+			case STATUS_WAITING -> "WAITING";
+			case STATUS_CONFIRMED -> "CONFIRMED";
+			case STATUS_REJECTED -> "REJECTED";
+			default -> readString(buf);
+		};
+	}
+}
@@ -0,0 +1,245 @@
+package cassdemo.snapshot;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.BackendSession;
+import cassdemo.backend.ChangedKeys;
+import cassdemo.tables.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Warm state backed by a memory-mapped snapshot file. Opening the store only builds an on-heap
+ * index of record offsets; rows stay in the mapped file and are decoded on access.
+ *
+ * catchUp() pulls changes made after the snapshot into a small on-heap overlay. It reads only the
+ * snapshot_changes buckets since the last catch-up and re-reads the lockers, shipments and status
+ * partitions named there, so releases are picked up too. A changed status partition replaces the
+ * snapshot's rows as a whole. BackendSession.useSnapshot() makes the store the read path for lockers
+ * and shipments; rows the session reads through or writes itself are added to the overlay.
+ * Without catchUp() the store works offline, e.g. for analysis away from production.
+ */
+public class SnapshotStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+	/* Change log rows carry client clocks and are written without waiting, look back a little further than the last catch-up */
+	private static final Duration CATCH_UP_CLOCK_SKEW = Duration.ofSeconds(30);
+
+	private final ByteBuffer buffer;
+	private final Instant createdAt;
+
+	private final Map<UUID, Integer> lockerOffsets = new HashMap<>();
+	private final Map<UUID, Integer> shipmentOffsets = new HashMap<>();
+	private final Map<UUID, List<Integer>> lockerShipmentOffsets = new HashMap<>();
+	private final Map<UUID, List<Integer>> shipmentLockerOffsets = new HashMap<>();
+
+	private final Map<UUID, Locker> lockerOverlay = new ConcurrentHashMap<>();
+	private final Map<UUID, Shipment> shipmentOverlay = new ConcurrentHashMap<>();
+	private final Map<UUID, List<LockerShipment>> lockerShipmentOverlay = new ConcurrentHashMap<>();
+	private final Map<UUID, List<ShipmentLocker>> shipmentLockerOverlay = new ConcurrentHashMap<>();
+
+	/* Changes up to this point are in the overlay; guarded by catchUp */
+	private Instant caughtUpTo;
+	private long caughtUpAtNanos;
+
+	private SnapshotStore(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.remaining() < 16 || buffer.getInt() != SnapshotFormat.MAGIC) {
+			throw new IOException("Not a snapshot file");
+		}
+		int version = buffer.getInt();
+		if (version != SnapshotFormat.VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+		this.createdAt = Instant.ofEpochMilli(buffer.getLong());
+		this.caughtUpTo = createdAt;
+		this.caughtUpAtNanos = System.nanoTime();
+
+		buildIndex();
+	}
+
+	public static SnapshotStore open(Path path) throws BackendException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot larger than 2 GB is not supported: " + size + " bytes");
+			}
+			/* The mapping stays valid after the channel is closed */
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			SnapshotStore store = new SnapshotStore(mapped);
+			logger.info("Snapshot " + path + " from " + store.createdAt + " loaded: "
+					+ store.lockerOffsets.size() + " lockers, " + store.shipmentOffsets.size() + " shipments");
+			return store;
+		} catch (IOException | RuntimeException e) {
+			throw new BackendException("Could not load snapshot. " + e.getMessage() + ".", e);
+		}
+	}
+
+	private void buildIndex() throws IOException {
+		while (true) {
+			byte tag = buffer.get();
+			if (tag == SnapshotFormat.TAG_END) {
+				return;
+			}
+			int offset = buffer.position();
+			UUID key = SnapshotFormat.readUUID(buffer);
+			buffer.position(offset);
+
+			switch (tag) {
+				case SnapshotFormat.TAG_LOCKER -> lockerOffsets.put(key, offset);
+				case SnapshotFormat.TAG_SHIPMENT -> shipmentOffsets.put(key, offset);
+				case SnapshotFormat.TAG_LOCKER_SHIPMENT -> lockerShipmentOffsets.computeIfAbsent(key, k -> new ArrayList<>()).add(offset);
+				case SnapshotFormat.TAG_SHIPMENT_LOCKER -> shipmentLockerOffsets.computeIfAbsent(key, k -> new ArrayList<>()).add(offset);
+				default -> { }
+			}
+			SnapshotFormat.skipRecord(buffer, tag);
+		}
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	/* reads */
+
+	public Locker getLocker(UUID lockerId) {
+		Locker locker = lockerOverlay.get(lockerId);
+		if (locker != null) {
+			return locker;
+		}
+		Integer offset = lockerOffsets.get(lockerId);
+		return offset == null ? null : SnapshotFormat.readLocker(buffer, offset);
+	}
+
+	public Shipment getShipment(UUID shipmentId) {
+		Shipment shipment = shipmentOverlay.get(shipmentId);
+		if (shipment != null) {
+			return shipment;
+		}
+		Integer offset = shipmentOffsets.get(shipmentId);
+		return offset == null ? null : SnapshotFormat.readShipment(buffer, offset);
+	}
+
+	public List<Locker> getAllLockers() {
+		List<Locker> lockers = new ArrayList<>(lockerOffsets.size() + lockerOverlay.size());
+		for (Map.Entry<UUID, Integer> entry : lockerOffsets.entrySet()) {
+			if (!lockerOverlay.containsKey(entry.getKey())) {
+				lockers.add(SnapshotFormat.readLocker(buffer, entry.getValue()));
+			}
+		}
+		lockers.addAll(lockerOverlay.values());
+		return lockers;
+	}
+
+	public List<Shipment> getAllShipments() {
+		List<Shipment> shipments = new ArrayList<>(shipmentOffsets.size() + shipmentOverlay.size());
+		for (Map.Entry<UUID, Integer> entry : shipmentOffsets.entrySet()) {
+			if (!shipmentOverlay.containsKey(entry.getKey())) {
+				shipments.add(SnapshotFormat.readShipment(buffer, entry.getValue()));
+			}
+		}
+		shipments.addAll(shipmentOverlay.values());
+		return shipments;
+	}
+
+	public List<LockerShipment> getLockerShipments(UUID lockerId) {
+		List<LockerShipment> rows = lockerShipmentOverlay.get(lockerId);
+		if (rows != null) {
+			return new ArrayList<>(rows);
+		}
+		rows = new ArrayList<>();
+		for (int offset : lockerShipmentOffsets.getOrDefault(lockerId, Collections.emptyList())) {
+			rows.add(SnapshotFormat.readLockerShipment(buffer, offset));
+		}
+		return rows;
+	}
+
+	public List<ShipmentLocker> getShipmentLockers(UUID shipmentId) {
+		List<ShipmentLocker> rows = shipmentLockerOverlay.get(shipmentId);
+		if (rows != null) {
+			return new ArrayList<>(rows);
+		}
+		rows = new ArrayList<>();
+		for (int offset : shipmentLockerOffsets.getOrDefault(shipmentId, Collections.emptyList())) {
+			rows.add(SnapshotFormat.readShipmentLocker(buffer, offset));
+		}
+		return rows;
+	}
+
+	/* writes - lockers and shipments read through or inserted by the session */
+
+	public void putLocker(Locker locker) {
+		lockerOverlay.put(locker.getLocker_id(), locker);
+	}
+
+	public void putShipment(Shipment shipment) {
+		shipmentOverlay.put(shipment.getShipment_id(), shipment);
+	}
+
+	/* catch-up */
+
+	/* False once the changes since the last catch-up may have expired from snapshot_changes */
+	public synchronized boolean canCatchUp() {
+		return caughtUpTo.minus(CATCH_UP_CLOCK_SKEW).isAfter(Instant.now().minus(BackendSession.CHANGE_LOG_RETENTION));
+	}
+
+	public synchronized long catchUp(BackendSession session) throws BackendException {
+		if (!canCatchUp()) {
+			throw new BackendException("Snapshot from " + createdAt + " was last caught up at " + caughtUpTo
+					+ ", changes since then have expired. Export a fresh snapshot.");
+		}
+		Instant since = caughtUpTo.minus(CATCH_UP_CLOCK_SKEW);
+		Instant until = Instant.now();
+		ChangedKeys changes = session.selectChanges(since, until);
+
+		/* Lockers and shipments are write-once, only fetch rows that are missing from the snapshot */
+		for (UUID lockerId : changes.getLockerIds()) {
+			if (getLocker(lockerId) == null) {
+				Locker locker = session.selectLocker(lockerId);
+				if (locker != null) {
+					lockerOverlay.put(lockerId, locker);
+				}
+			}
+			lockerShipmentOverlay.put(lockerId, session.selectAllShipmentsFromLockerById(lockerId));
+		}
+		for (UUID shipmentId : changes.getShipmentIds()) {
+			if (getShipment(shipmentId) == null) {
+				Shipment shipment = session.selectShipment(shipmentId);
+				if (shipment != null) {
+					shipmentOverlay.put(shipmentId, shipment);
+				}
+			}
+			shipmentLockerOverlay.put(shipmentId, session.selectAllLockersFromShipmentById(shipmentId));
+		}
+
+		caughtUpTo = until;
+		caughtUpAtNanos = System.nanoTime();
+		long applied = changes.getLockerIds().size() + changes.getShipmentIds().size();
+		logger.info("Snapshot caught up with " + changes.getChanges() + " changes to " + applied + " keys since " + since);
+		return applied;
+	}
+
+	/* Catches up when the last catch-up is older than maxAgeNanos; false when the store can no longer catch up */
+	public synchronized boolean catchUpIfOlderThan(BackendSession session, long maxAgeNanos) throws BackendException {
+		if (System.nanoTime() - caughtUpAtNanos < maxAgeNanos) {
+			return true;
+		}
+		if (!canCatchUp()) {
+			return false;
+		}
+		catchUp(session);
+		return true;
+	}
+}
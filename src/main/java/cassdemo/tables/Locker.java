@@ -1,6 +1,8 @@
 package cassdemo.tables;
 
 import com.datastax.driver.mapping.annotations.Table;
+import com.datastax.driver.mapping.annotations.Transient;
+import java.util.Arrays;
 import java.util.UUID;
 import java.util.List;
 
@@ -8,7 +10,8 @@ import java.util.List;
 public class Locker {
     private UUID locker_id;
     private String locker_name;
-    private List<Byte> locker_boxes;
+    private List<Byte> locker_boxes; // legacy encoding, empty once the row is migrated to locker_box_layout
+    private byte[] locker_box_layout; // one byte per box: 1 = Small, 2 = Medium, 3 = Large
 
     public UUID getLocker_id() {
         return locker_id;
@@ -34,12 +37,36 @@ public class Locker {
         this.locker_boxes = locker_boxes;
     }
 
+    public byte[] getLocker_box_layout() {
+        return locker_box_layout;
+    }
+
+    public void setLocker_box_layout(byte[] locker_box_layout) {
+        this.locker_box_layout = locker_box_layout;
+    }
+
+    /*
+     * Box sizes by index, from locker_box_layout or, for rows not migrated yet, from locker_boxes.
+     * Always a copy: cached and snapshot lockers are shared between threads.
+     */
+    @Transient
+    public byte[] getBoxes() {
+        if (locker_box_layout != null || locker_boxes == null) {
+            return locker_box_layout == null ? new byte[0] : locker_box_layout.clone();
+        }
+        byte[] boxes = new byte[locker_boxes.size()];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = locker_boxes.get(i);
+        }
+        return boxes;
+    }
+
     @Override
     public String toString() {
         return "Lockers{" +
                 "locker_id=" + locker_id +
                 ", locker_name='" + locker_name + '\'' +
-                ", locker_boxes=" + locker_boxes +
+                ", locker_boxes=" + Arrays.toString(getBoxes()) +
                 '}';
     }
 }
@@ -0,0 +1,54 @@
+package cassdemo.tables;
+
+import com.datastax.driver.mapping.annotations.Table;
+import java.util.UUID;
+
+@Table(name = "locker_occupancy")
+public class LockerOccupancy {
+    private UUID locker_id;
+    private Byte box_size;
+    private Long total;
+    private Long occupied;
+
+    public UUID getLocker_id() {
+        return locker_id;
+    }
+
+    public void setLocker_id(UUID locker_id) {
+        this.locker_id = locker_id;
+    }
+
+    public Byte getBox_size() {
+        return box_size;
+    }
+
+    public void setBox_size(Byte box_size) {
+        this.box_size = box_size;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+
+    public Long getOccupied() {
+        return occupied;
+    }
+
+    public void setOccupied(Long occupied) {
+        this.occupied = occupied;
+    }
+
+    @Override
+    public String toString() {
+        return "LockerOccupancy{" +
+                "locker_id=" + locker_id +
+                ", box_size=" + box_size +
+                ", total=" + total +
+                ", occupied=" + occupied +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package cassdemo.tables;
+
+import com.datastax.driver.mapping.annotations.Table;
+import java.time.Instant;
+
+@Table(name = "reservation_workers")
+public class ReservationWorker {
+    private String ring;
+    private String worker_id;
+    private String endpoint;
+    private Instant joined_at;
+
+    public String getRing() {
+        return ring;
+    }
+
+    public void setRing(String ring) {
+        this.ring = ring;
+    }
+
+    public String getWorker_id() {
+        return worker_id;
+    }
+
+    public void setWorker_id(String worker_id) {
+        this.worker_id = worker_id;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public Instant getJoined_at() {
+        return joined_at;
+    }
+
+    public void setJoined_at(Instant joined_at) {
+        this.joined_at = joined_at;
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationWorker{" +
+                "ring='" + ring + '\'' +
+                ", worker_id='" + worker_id + '\'' +
+                ", endpoint='" + endpoint + '\'' +
+                ", joined_at=" + joined_at +
+                '}';
+    }
+}
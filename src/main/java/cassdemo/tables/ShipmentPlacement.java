@@ -0,0 +1,55 @@
+package cassdemo.tables;
+
+import com.datastax.driver.mapping.annotations.Table;
+import java.util.UUID;
+import java.time.Instant;
+
+@Table(name = "shipment_placements")
+public class ShipmentPlacement {
+    private UUID shipment_id;
+    private UUID locker_id;
+    private Integer locker_box_index;
+    private Instant confirmedAt;
+
+    public UUID getShipment_id() {
+        return shipment_id;
+    }
+
+    public void setShipment_id(UUID shipment_id) {
+        this.shipment_id = shipment_id;
+    }
+
+    public UUID getLocker_id() {
+        return locker_id;
+    }
+
+    public void setLocker_id(UUID locker_id) {
+        this.locker_id = locker_id;
+    }
+
+    public Integer getLocker_box_index() {
+        return locker_box_index;
+    }
+
+    public void setLocker_box_index(Integer locker_box_index) {
+        this.locker_box_index = locker_box_index;
+    }
+
+    public Instant getConfirmedAt() {
+        return confirmedAt;
+    }
+
+    public void setConfirmedAt(Instant confirmedAt) {
+        this.confirmedAt = confirmedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ShipmentPlacement{" +
+                "shipment_id=" + shipment_id +
+                ", locker_id=" + locker_id +
+                ", locker_box_index=" + locker_box_index +
+                ", confirmedAt=" + confirmedAt +
+                '}';
+    }
+}
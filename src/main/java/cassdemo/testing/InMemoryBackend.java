@@ -0,0 +1,211 @@
+package cassdemo.testing;
+
+import cassdemo.backend.OccupancySummary;
+import cassdemo.backend.ReservationBackend;
+import cassdemo.backend.ReservationResult;
+import cassdemo.tables.*;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * In-process stand-in for BackendSession, used to load test the layers above it without a cluster.
+ * Every operation waits roundTripMicros to imitate one round trip; reservations are serialized per locker.
+ */
+public class InMemoryBackend implements ReservationBackend {
+
+    private final long roundTripNanos;
+
+    private final Map<UUID, Locker> lockers = new ConcurrentHashMap<>();
+    private final Map<UUID, Shipment> shipments = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<UUID, LockerShipment>> lockerShipments = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<UUID, ShipmentLocker>> shipmentLockers = new ConcurrentHashMap<>();
+    private final Map<UUID, OccupancySummary> occupancy = new ConcurrentHashMap<>();
+
+    public InMemoryBackend(long roundTripMicros) {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    private void roundTrip() {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    public UUID insertLocker(String lockerName, Byte... lockerBoxes) {
+        Locker locker = new Locker();
+        locker.setLocker_id(UUID.randomUUID());
+        locker.setLocker_name(lockerName);
+        byte[] layout = new byte[lockerBoxes.length];
+        for (int i = 0; i < layout.length; i++) {
+            layout[i] = lockerBoxes[i];
+        }
+        locker.setLocker_box_layout(layout);
+        lockers.put(locker.getLocker_id(), locker);
+
+        OccupancySummary summary = new OccupancySummary(locker.getLocker_id());
+        for (Byte size : lockerBoxes) {
+            summary.addTotal(size, 1);
+        }
+        occupancy.put(locker.getLocker_id(), summary);
+        return locker.getLocker_id();
+    }
+
+    public UUID insertShipment(String shipmentName, Byte boxSize) {
+        Shipment shipment = new Shipment();
+        shipment.setShipment_id(UUID.randomUUID());
+        shipment.setShipment_name(shipmentName);
+        shipment.setBox_size(boxSize);
+        shipments.put(shipment.getShipment_id(), shipment);
+        return shipment.getShipment_id();
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public List<Locker> selectAllLockers() {
+        roundTrip();
+        return new ArrayList<>(lockers.values());
+    }
+
+    @Override
+    public List<Shipment> selectAllShipments() {
+        roundTrip();
+        return new ArrayList<>(shipments.values());
+    }
+
+    @Override
+    public Locker selectLocker(UUID lockerId) {
+        roundTrip();
+        return lockers.get(lockerId);
+    }
+
+    @Override
+    public Shipment selectShipment(UUID shipmentId) {
+        roundTrip();
+        return shipments.get(shipmentId);
+    }
+
+    @Override
+    public List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) {
+        roundTrip();
+        return new ArrayList<>(lockerShipments.getOrDefault(lockerId, Collections.emptyMap()).values());
+    }
+
+    @Override
+    public List<ShipmentLocker> selectAllLockersFromShipmentById(UUID shipmentId) {
+        roundTrip();
+        return new ArrayList<>(shipmentLockers.getOrDefault(shipmentId, Collections.emptyMap()).values());
+    }
+
+    @Override
+    public ShipmentPlacement findConfirmedLocker(UUID shipmentId) {
+        roundTrip();
+        for (ShipmentLocker row : shipmentLockers.getOrDefault(shipmentId, Collections.emptyMap()).values()) {
+            if ("CONFIRMED".equals(row.getStatus())) {
+                ShipmentPlacement placement = new ShipmentPlacement();
+                placement.setShipment_id(shipmentId);
+                placement.setLocker_id(row.getLocker_id());
+                placement.setLocker_box_index(row.getLocker_box_index());
+                placement.setConfirmedAt(row.getAddedAt());
+                return placement;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public ReservationResult insertShipmentIntoLocker(UUID lockerId, UUID shipmentId) {
+        Locker locker = selectLocker(lockerId);
+        Shipment shipment = selectShipment(shipmentId);
+        if (locker == null || shipment == null) {
+            return ReservationResult.NOT_FOUND;
+        }
+
+        roundTrip();
+        synchronized (locker) {
+            Set<Integer> occupied = new HashSet<>();
+            for (LockerShipment row : lockerShipments.getOrDefault(lockerId, Collections.emptyMap()).values()) {
+                if ("CONFIRMED".equals(row.getStatus())) {
+                    occupied.add(row.getLocker_box_index());
+                }
+            }
+
+            byte[] boxes = locker.getBoxes();
+            int best = -1;
+            for (int i = 0; i < boxes.length; i++) {
+                if (!occupied.contains(i) && boxes[i] >= shipment.getBox_size()
+                        && (best < 0 || boxes[i] < boxes[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return ReservationResult.NO_FREE_BOX;
+            }
+
+            put(lockerId, shipmentId, best, Instant.now(), "CONFIRMED");
+            occupancy.get(lockerId).addOccupied(boxes[best], 1);
+        }
+        roundTrip();
+        return ReservationResult.CONFIRMED;
+    }
+
+    @Override
+    public Map<UUID, ReservationResult> assignShipmentsToLocker(UUID lockerId, List<UUID> shipmentIds) {
+        Map<UUID, ReservationResult> results = new LinkedHashMap<>();
+        for (UUID shipmentId : shipmentIds) {
+            results.put(shipmentId, insertShipmentIntoLocker(lockerId, shipmentId));
+        }
+        return results;
+    }
+
+    @Override
+    public boolean releaseShipmentFromLocker(UUID lockerId, UUID shipmentId) {
+        roundTrip();
+        Locker locker = lockers.get(lockerId);
+        if (locker == null) {
+            return false;
+        }
+        synchronized (locker) {
+            LockerShipment row = lockerShipments.getOrDefault(lockerId, Collections.emptyMap()).remove(shipmentId);
+            shipmentLockers.getOrDefault(shipmentId, Collections.emptyMap()).remove(lockerId);
+            if (row == null) {
+                return false;
+            }
+            if ("CONFIRMED".equals(row.getStatus())) {
+                occupancy.get(lockerId).addOccupied(locker.getBoxes()[row.getLocker_box_index()], -1);
+            }
+        }
+        roundTrip();
+        return true;
+    }
+
+    @Override
+    public Map<UUID, OccupancySummary> getOccupancySummaries() {
+        return Collections.unmodifiableMap(occupancy);
+    }
+
+    private void put(UUID lockerId, UUID shipmentId, int index, Instant addedAt, String status) {
+        LockerShipment lockerShipment = new LockerShipment();
+        lockerShipment.setLocker_id(lockerId);
+        lockerShipment.setShipment_id(shipmentId);
+        lockerShipment.setLocker_box_index(index);
+        lockerShipment.setAddedAt(addedAt);
+        lockerShipment.setStatus(status);
+        lockerShipments.computeIfAbsent(lockerId, k -> new ConcurrentHashMap<>()).put(shipmentId, lockerShipment);
+
+        ShipmentLocker shipmentLocker = new ShipmentLocker();
+        shipmentLocker.setShipment_id(shipmentId);
+        shipmentLocker.setLocker_id(lockerId);
+        shipmentLocker.setLocker_box_index(index);
+        shipmentLocker.setAddedAt(addedAt);
+        shipmentLocker.setStatus(status);
+        shipmentLockers.computeIfAbsent(shipmentId, k -> new ConcurrentHashMap<>()).put(lockerId, shipmentLocker);
+    }
+}
@@ -0,0 +1,681 @@
+package cassdemo.testing;
+
+import cassdemo.backend.BackendException;
+import cassdemo.backend.ClaimStore;
+import cassdemo.backend.ReservationProtocol;
+import cassdemo.backend.ReservationResult;
+import cassdemo.tables.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/*
+ * Deterministic simulation of the reservation protocol behind BackendSession.insertShipmentIntoLocker
+ * and BackendSession.assignShipmentsToLocker.
+ *
+ * Every client runs the real ReservationProtocol (placeShipment and assignShipments) against a
+ * ClaimStore backed by simulated replicated locker_shipments and shipment_lockers tables: every replica
+ * applies writes last-write-wins by write timestamp, each message gets its own random delay, so mutations
+ * are reordered between replicas, and a small fraction of messages is slow enough to time the request out,
+ * which the store reports as a BackendException. Client clocks are skewed and addedAt is stored with
+ * millisecond resolution, as in Cassandra.
+ *
+ * Not modelled: the shipment_placements row, which rides in the logged batch of a CONFIRMED claim and
+ * is never read by the protocol, and admission control, which BackendSession applies before a
+ * reservation reaches the protocol. Every reservation here is admitted, so the figures are those of the
+ * protocol alone, as with admission.enabled=false.
+ *
+ * Each client is a thread, but only one thread - the event loop or a single client - runs at a time:
+ * a client hands control back to the loop whenever it waits for the store. Everything random comes from
+ * one seeded Random, so a schedule is fully reproduced by its seed.
+ *
+ * Usage: ProtocolSimulation [key=value ...], keys: schedules, seed, clients, lockers, boxes (e.g. 1,1,2,2,3,3),
+ * reservations, batch_fraction, batch_size, replicas, read_cl, write_cl, delay_us, slow_probability,
+ * slow_delay_us, timeout_us, skew_us
+ */
+public class ProtocolSimulation {
+
+    public static final class Config {
+        int schedules = 2000;
+        long seed = 1;
+        int clients = 8;
+        int lockers = 2;
+        byte[] boxes = {1, 1, 2, 2, 3, 3};
+        int reservationsPerClient = 4;
+        /* Fraction of reservations made through assignShipments, each with batchSize shipments */
+        double batchFraction = 0.25;
+        int batchSize = 3;
+        int replicas = 3;
+        int readConsistency = 2;
+        int writeConsistency = 2;
+        long delayMicros = 500;
+        double slowProbability = 0.01;
+        long slowDelayMicros = 20000;
+        long timeoutMicros = 12000;
+        long clockSkewMicros = 2000;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value, got " + arg);
+                }
+                String key = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+                switch (key) {
+                    case "schedules" -> config.schedules = Integer.parseInt(value);
+                    case "seed" -> config.seed = Long.parseLong(value);
+                    case "clients" -> config.clients = Integer.parseInt(value);
+                    case "lockers" -> config.lockers = Integer.parseInt(value);
+                    case "boxes" -> {
+                        String[] sizes = value.split(",");
+                        config.boxes = new byte[sizes.length];
+                        for (int i = 0; i < sizes.length; i++) {
+                            config.boxes[i] = Byte.parseByte(sizes[i].trim());
+                        }
+                    }
+                    case "reservations" -> config.reservationsPerClient = Integer.parseInt(value);
+                    case "batch_fraction" -> config.batchFraction = Double.parseDouble(value);
+                    case "batch_size" -> config.batchSize = Integer.parseInt(value);
+                    case "replicas" -> config.replicas = Integer.parseInt(value);
+                    case "read_cl" -> config.readConsistency = Integer.parseInt(value);
+                    case "write_cl" -> config.writeConsistency = Integer.parseInt(value);
+                    case "delay_us" -> config.delayMicros = Long.parseLong(value);
+                    case "slow_probability" -> config.slowProbability = Double.parseDouble(value);
+                    case "slow_delay_us" -> config.slowDelayMicros = Long.parseLong(value);
+                    case "timeout_us" -> config.timeoutMicros = Long.parseLong(value);
+                    case "skew_us" -> config.clockSkewMicros = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown key " + key);
+                }
+            }
+            return config;
+        }
+
+        @Override
+        public String toString() {
+            return "schedules=" + schedules + " seed=" + seed + " clients=" + clients + " lockers=" + lockers
+                    + " boxes=" + Arrays.toString(boxes) + " reservations=" + reservationsPerClient
+                    + " batch_fraction=" + batchFraction + " batch_size=" + batchSize
+                    + " replicas=" + replicas + " read_cl=" + readConsistency + " write_cl=" + writeConsistency
+                    + " delay_us=" + delayMicros + " slow_probability=" + slowProbability
+                    + " slow_delay_us=" + slowDelayMicros + " timeout_us=" + timeoutMicros + " skew_us=" + clockSkewMicros;
+        }
+    }
+
+    /* Outcome of a single schedule, counted per shipment */
+    public static final class ScheduleResult {
+        long seed;
+        int shipments;
+        int batchShipments;
+        int confirmed;
+        int noFreeBox;
+        int aborted;
+        int duplicates;
+        long roundTrips;
+        long makespanMicros;
+    }
+
+    /* A locker_shipments or shipment_lockers row as stored on one replica */
+    private static final class Cell {
+        final int index;
+        final Instant addedAt;
+        final String status;
+        final long writeTime;
+
+        Cell(int index, Instant addedAt, String status, long writeTime) {
+            this.index = index;
+            this.addedAt = addedAt;
+            this.status = status;
+            this.writeTime = writeTime;
+        }
+
+        /* Last write wins; on equal write timestamps Cassandra keeps the greater value */
+        boolean supersedes(Cell other) {
+            return other == null || writeTime > other.writeTime
+                    || (writeTime == other.writeTime && status.compareTo(other.status) > 0);
+        }
+    }
+
+    /* partition -> clustering key -> row, per table */
+    private static final class Replica {
+        final Map<UUID, Map<UUID, Cell>> lockerShipments = new HashMap<>();
+        final Map<UUID, Map<UUID, Cell>> shipmentLockers = new HashMap<>();
+
+        Map<UUID, Map<UUID, Cell>> table(boolean mirror) {
+            return mirror ? shipmentLockers : lockerShipments;
+        }
+    }
+
+    /* One row written by a request; mirror rows go to shipment_lockers */
+    private static final class Mutation {
+        final boolean mirror;
+        final UUID partition;
+        final UUID row;
+        final Cell cell;
+
+        Mutation(boolean mirror, UUID partition, UUID row, Cell cell) {
+            this.mirror = mirror;
+            this.partition = partition;
+            this.row = row;
+            this.cell = cell;
+        }
+    }
+
+    private static final class Event implements Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /* A client's clock in simulated microseconds */
+    private static final class SimulatedClock extends Clock {
+        private final LongSupplier micros;
+        private final ZoneId zone;
+
+        SimulatedClock(LongSupplier micros) {
+            this(micros, ZoneOffset.UTC);
+        }
+
+        private SimulatedClock(LongSupplier micros, ZoneId zone) {
+            this.micros = micros;
+            this.zone = zone;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.EPOCH.plusNanos(micros.getAsLong() * 1000);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return zone.equals(this.zone) ? this : new SimulatedClock(micros, zone);
+        }
+    }
+
+    private final Config config;
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Map<UUID, Locker> lockers = new LinkedHashMap<>();
+    private final Map<UUID, Shipment> shipments = new HashMap<>();
+    private final List<Client> clients = new ArrayList<>();
+    private final ScheduleResult result = new ScheduleResult();
+
+    /* Released by a client whenever it waits for the store or finishes, handing control back to the loop */
+    private final Semaphore handBack = new Semaphore(0);
+    private Throwable failure;
+
+    private ProtocolSimulation(Config config, long seed) {
+        this.config = config;
+        this.random = new Random(seed);
+        this.result.seed = seed;
+        for (int i = 0; i < config.replicas; i++) {
+            replicas.add(new Replica());
+        }
+        for (int i = 0; i < config.lockers; i++) {
+            Locker locker = new Locker();
+            locker.setLocker_id(new UUID(random.nextLong(), random.nextLong()));
+            locker.setLocker_name("locker-" + i);
+            locker.setLocker_box_layout(config.boxes.clone());
+            lockers.put(locker.getLocker_id(), locker);
+        }
+        for (int i = 0; i < config.clients; i++) {
+            long skew = config.clockSkewMicros == 0 ? 0 : (long) ((random.nextDouble() * 2 - 1) * config.clockSkewMicros);
+            clients.add(new Client(i, skew));
+        }
+    }
+
+    public static ScheduleResult run(Config config, long seed) {
+        ProtocolSimulation simulation = new ProtocolSimulation(config, seed);
+        for (Client client : simulation.clients) {
+            simulation.schedule(0, client::start);
+        }
+        while (!simulation.events.isEmpty()) {
+            Event event = simulation.events.poll();
+            simulation.now = event.time;
+            event.action.run();
+        }
+        if (simulation.failure != null) {
+            throw new IllegalStateException("Client failed in schedule " + seed, simulation.failure);
+        }
+        simulation.result.duplicates = simulation.countDuplicates();
+        return simulation.result;
+    }
+
+    /* event loop and network */
+
+    private void schedule(long delay, Runnable action) {
+        events.add(new Event(now + delay, sequence++, action));
+    }
+
+    private long messageDelay() {
+        long delay = (long) (-Math.log(1 - random.nextDouble()) * config.delayMicros);
+        if (random.nextDouble() < config.slowProbability) {
+            delay += config.slowDelayMicros;
+        }
+        return delay;
+    }
+
+    /* A request that needs `required` of the replica responses; onDone gets false on timeout */
+    private final class Request {
+        final int required;
+        final Consumer<Boolean> onDone;
+        int responses = 0;
+        boolean finished = false;
+
+        Request(int required, Consumer<Boolean> onDone) {
+            this.required = required;
+            this.onDone = onDone;
+            schedule(config.timeoutMicros, () -> finish(false));
+        }
+
+        void respond() {
+            if (++responses == required) {
+                finish(true);
+            }
+        }
+
+        void finish(boolean success) {
+            if (!finished) {
+                finished = true;
+                onDone.accept(success);
+            }
+        }
+    }
+
+    /* Coordinator sends the mutations to every replica, each applies them together, and answers after writeConsistency acks */
+    private void write(List<Mutation> mutations, Consumer<Boolean> onDone) {
+        result.roundTrips++;
+        Request request = new Request(config.writeConsistency, onDone);
+        for (Replica replica : replicas) {
+            schedule(messageDelay(), () -> {
+                for (Mutation mutation : mutations) {
+                    Map<UUID, Cell> partition = replica.table(mutation.mirror).computeIfAbsent(mutation.partition, k -> new HashMap<>());
+                    if (mutation.cell.supersedes(partition.get(mutation.row))) {
+                        partition.put(mutation.row, mutation.cell);
+                    }
+                }
+                schedule(messageDelay(), request::respond);
+            });
+        }
+    }
+
+    /* Several writes sent at once; done when all have answered, false if any of them timed out */
+    private void writeAll(List<List<Mutation>> writes, Consumer<Boolean> onDone) {
+        int[] remaining = {writes.size()};
+        boolean[] success = {true};
+        for (List<Mutation> mutations : writes) {
+            write(mutations, done -> {
+                success[0] &= done;
+                if (--remaining[0] == 0) {
+                    onDone.accept(success[0]);
+                }
+            });
+        }
+    }
+
+    /* Coordinator reads the partition from readConsistency random replicas and merges the answers */
+    private void read(boolean mirror, UUID partitionKey, Consumer<Map<UUID, Cell>> onRows, Runnable onTimeout) {
+        result.roundTrips++;
+        Map<UUID, Cell> merged = new HashMap<>();
+        Request request = new Request(config.readConsistency, success -> {
+            if (success) {
+                onRows.accept(merged);
+            } else {
+                onTimeout.run();
+            }
+        });
+        List<Integer> chosen = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            chosen.add(i);
+        }
+        Collections.shuffle(chosen, random);
+        for (int r : chosen.subList(0, config.readConsistency)) {
+            Replica replica = replicas.get(r);
+            schedule(messageDelay(), () -> {
+                Map<UUID, Cell> snapshot = new HashMap<>(replica.table(mirror).getOrDefault(partitionKey, Collections.emptyMap()));
+                schedule(messageDelay(), () -> {
+                    if (!request.finished) {
+                        snapshot.forEach((row, cell) -> {
+                            if (cell.supersedes(merged.get(row))) {
+                                merged.put(row, cell);
+                            }
+                        });
+                    }
+                    request.respond();
+                });
+            });
+        }
+    }
+
+    /* A plain round trip whose answer does not depend on the replicas (metadata, counters) */
+    private void roundTrip(Runnable next) {
+        result.roundTrips++;
+        schedule(messageDelay() + messageDelay(), next);
+    }
+
+    /* An operation on the event loop, completed through exactly one of its callbacks */
+    private interface Operation<T> {
+        void start(Consumer<T> onResult, Runnable onTimeout);
+    }
+
+    /* clients */
+
+    private final class Client implements ClaimStore {
+        final long clockSkew;
+        final ReservationProtocol protocol;
+        final Thread thread;
+        final Semaphore wake = new Semaphore(0);
+        Object value;
+        boolean timedOut;
+
+        Client(int id, long clockSkew) {
+            this.clockSkew = clockSkew;
+            this.protocol = new ReservationProtocol(this, new SimulatedClock(this::clock), () -> random);
+            this.thread = new Thread(this::run, "simulated-client-" + id);
+            this.thread.setDaemon(true);
+        }
+
+        long clock() {
+            return now + clockSkew;
+        }
+
+        /* Loop thread: runs the client until it first waits for the store */
+        void start() {
+            thread.start();
+            handBack.acquireUninterruptibly();
+        }
+
+        private void run() {
+            try {
+                for (int i = 0; i < config.reservationsPerClient; i++) {
+                    reserve();
+                }
+                result.makespanMicros = Math.max(result.makespanMicros, now);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                handBack.release();
+            }
+        }
+
+        private void reserve() {
+            UUID lockerId = new ArrayList<>(lockers.keySet()).get(random.nextInt(lockers.size()));
+            if (config.batchSize > 1 && random.nextDouble() < config.batchFraction) {
+                Map<UUID, ReservationResult> results = new LinkedHashMap<>();
+                for (int i = 0; i < config.batchSize; i++) {
+                    results.put(newShipment(), ReservationResult.NO_FREE_BOX);
+                }
+                boolean aborted = false;
+                try {
+                    protocol.assignShipments(lockerId, results);
+                } catch (BackendException | RuntimeException e) {
+                    aborted = true;
+                }
+                result.batchShipments += results.size();
+                for (ReservationResult outcome : results.values()) {
+                    count(outcome == ReservationResult.CONFIRMED ? outcome : aborted ? null : outcome);
+                }
+            } else {
+                UUID shipmentId = newShipment();
+                ReservationResult outcome;
+                try {
+                    outcome = protocol.placeShipment(lockerId, shipmentId, new SimulatedClock(this::clock).instant());
+                } catch (BackendException | RuntimeException e) {
+                    /* A timed out request ends the reservation and leaves its rows behind */
+                    outcome = null;
+                }
+                count(outcome);
+            }
+        }
+
+        private UUID newShipment() {
+            Shipment shipment = new Shipment();
+            shipment.setShipment_id(new UUID(random.nextLong(), random.nextLong()));
+            shipment.setBox_size((byte) (random.nextInt(3) + 1));
+            shipments.put(shipment.getShipment_id(), shipment);
+            return shipment.getShipment_id();
+        }
+
+        private void count(ReservationResult outcome) {
+            result.shipments++;
+            if (outcome == null) {
+                result.aborted++;
+            } else if (outcome == ReservationResult.CONFIRMED) {
+                result.confirmed++;
+            } else {
+                result.noFreeBox++;
+            }
+        }
+
+        /* Client thread: starts the operation, hands control to the loop and waits until the loop completes it */
+        @SuppressWarnings("unchecked")
+        private <T> T call(String name, Operation<T> operation) throws BackendException {
+            timedOut = false;
+            operation.start(outcome -> {
+                value = outcome;
+                resume();
+            }, () -> {
+                timedOut = true;
+                resume();
+            });
+            handBack.release();
+            wake.acquireUninterruptibly();
+            if (timedOut) {
+                throw new BackendException("Simulated timeout of " + name);
+            }
+            return (T) value;
+        }
+
+        /* Loop thread: lets the client continue and waits until it hands control back */
+        private void resume() {
+            wake.release();
+            handBack.acquireUninterruptibly();
+        }
+
+        private Cell cell(int index, Instant timestamp, String status) {
+            /* addedAt is a Cassandra timestamp, milliseconds; the write time is the client's clock */
+            return new Cell(index, Instant.ofEpochMilli(timestamp.toEpochMilli()), status, clock());
+        }
+
+        @Override
+        public Locker selectLocker(UUID lockerId) throws BackendException {
+            return call("selectLocker", (onResult, onTimeout) -> roundTrip(() -> onResult.accept(lockers.get(lockerId))));
+        }
+
+        @Override
+        public Shipment selectShipment(UUID shipmentId) throws BackendException {
+            return call("selectShipment", (onResult, onTimeout) -> roundTrip(() -> onResult.accept(shipments.get(shipmentId))));
+        }
+
+        @Override
+        public List<Shipment> selectShipments(List<UUID> shipmentIds) throws BackendException {
+            return call("selectShipments", (onResult, onTimeout) -> roundTrip(() -> {
+                List<Shipment> found = new ArrayList<>();
+                for (UUID shipmentId : shipmentIds) {
+                    if (shipments.containsKey(shipmentId)) {
+                        found.add(shipments.get(shipmentId));
+                    }
+                }
+                onResult.accept(found);
+            }));
+        }
+
+        @Override
+        public List<LockerShipment> selectAllShipmentsFromLockerById(UUID lockerId) throws BackendException {
+            return call("selectAllShipmentsFromLockerById", (onResult, onTimeout) ->
+                    read(false, lockerId, rows -> onResult.accept(toLockerShipments(lockerId, rows)), onTimeout));
+        }
+
+        @Override
+        public ShipmentLocker selectShipmentLocker(UUID shipmentId, UUID lockerId) throws BackendException {
+            return call("selectShipmentLocker", (onResult, onTimeout) ->
+                    read(true, shipmentId, rows -> onResult.accept(toShipmentLocker(shipmentId, lockerId, rows.get(lockerId))), onTimeout));
+        }
+
+        @Override
+        public void logChange(UUID lockerId, Collection<UUID> shipmentIds) {
+            /* Fire-and-forget in BackendSession, it never delays a reservation */
+        }
+
+        @Override
+        public void writeClaim(UUID lockerId, UUID shipmentId, int index, Instant timestamp, String status) throws BackendException {
+            Cell cell = cell(index, timestamp, status);
+            List<Mutation> batch = List.of(new Mutation(false, lockerId, shipmentId, cell), new Mutation(true, shipmentId, lockerId, cell));
+            call("writeClaim", (onResult, onTimeout) -> write(batch, success -> {
+                if (success) {
+                    onResult.accept(null);
+                } else {
+                    onTimeout.run();
+                }
+            }));
+        }
+
+        @Override
+        public void writeClaims(UUID lockerId, Map<UUID, Integer> claims, Instant timestamp, String status,
+                                Map<UUID, Integer> otherClaims, String otherStatus) throws BackendException {
+            /* One logged batch of both rows per claim, all sent at once, as BackendSession sends them */
+            List<List<Mutation>> writes = new ArrayList<>();
+            for (Map.Entry<UUID, Integer> claim : claims.entrySet()) {
+                Cell cell = cell(claim.getValue(), timestamp, status);
+                writes.add(List.of(new Mutation(false, lockerId, claim.getKey(), cell), new Mutation(true, claim.getKey(), lockerId, cell)));
+            }
+            for (Map.Entry<UUID, Integer> claim : otherClaims.entrySet()) {
+                Cell cell = cell(claim.getValue(), timestamp, otherStatus);
+                writes.add(List.of(new Mutation(false, lockerId, claim.getKey(), cell), new Mutation(true, claim.getKey(), lockerId, cell)));
+            }
+            if (writes.isEmpty()) {
+                return;
+            }
+            call("writeClaims", (onResult, onTimeout) -> writeAll(writes, success -> {
+                if (success) {
+                    onResult.accept(null);
+                } else {
+                    onTimeout.run();
+                }
+            }));
+        }
+
+        @Override
+        public void updateOccupancy(UUID lockerId, Byte boxSize, long totalDelta, long occupiedDelta) throws BackendException {
+            call("updateOccupancy", (onResult, onTimeout) -> roundTrip(() -> onResult.accept(null)));
+        }
+    }
+
+    private static List<LockerShipment> toLockerShipments(UUID lockerId, Map<UUID, Cell> rows) {
+        List<LockerShipment> lockerShipments = new ArrayList<>(rows.size());
+        rows.forEach((shipment, cell) -> {
+            LockerShipment row = new LockerShipment();
+            row.setLocker_id(lockerId);
+            row.setShipment_id(shipment);
+            row.setLocker_box_index(cell.index);
+            row.setAddedAt(cell.addedAt);
+            row.setStatus(cell.status);
+            lockerShipments.add(row);
+        });
+        return lockerShipments;
+    }
+
+    private static ShipmentLocker toShipmentLocker(UUID shipmentId, UUID lockerId, Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        ShipmentLocker row = new ShipmentLocker();
+        row.setShipment_id(shipmentId);
+        row.setLocker_id(lockerId);
+        row.setLocker_box_index(cell.index);
+        row.setAddedAt(cell.addedAt);
+        row.setStatus(cell.status);
+        return row;
+    }
+
+    /* Boxes holding more than one CONFIRMED shipment once all replicas have converged */
+    private int countDuplicates() {
+        int duplicates = 0;
+        for (UUID locker : lockers.keySet()) {
+            Map<UUID, Cell> converged = new HashMap<>();
+            for (Replica replica : replicas) {
+                replica.lockerShipments.getOrDefault(locker, Collections.emptyMap()).forEach((shipment, cell) -> {
+                    if (cell.supersedes(converged.get(shipment))) {
+                        converged.put(shipment, cell);
+                    }
+                });
+            }
+            Map<Integer, Integer> confirmedPerBox = new HashMap<>();
+            converged.values().forEach(cell -> {
+                if (cell.status.equals("CONFIRMED")) {
+                    confirmedPerBox.merge(cell.index, 1, Integer::sum);
+                }
+            });
+            for (int count : confirmedPerBox.values()) {
+                duplicates += Math.max(0, count - 1);
+            }
+        }
+        return duplicates;
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.parse(args);
+        System.out.println("Simulating " + config);
+
+        long shipments = 0, batchShipments = 0, confirmed = 0, noFreeBox = 0, aborted = 0, duplicates = 0, roundTrips = 0, makespan = 0;
+        int schedulesWithDuplicates = 0;
+        List<Long> duplicateSeeds = new ArrayList<>();
+
+        for (int i = 0; i < config.schedules; i++) {
+            long seed = config.seed + i;
+            ScheduleResult schedule = run(config, seed);
+            shipments += schedule.shipments;
+            batchShipments += schedule.batchShipments;
+            confirmed += schedule.confirmed;
+            noFreeBox += schedule.noFreeBox;
+            aborted += schedule.aborted;
+            duplicates += schedule.duplicates;
+            roundTrips += schedule.roundTrips;
+            makespan += schedule.makespanMicros;
+            if (schedule.duplicates > 0) {
+                schedulesWithDuplicates++;
+                if (duplicateSeeds.size() < 10) {
+                    duplicateSeeds.add(seed);
+                }
+            }
+        }
+
+        System.out.printf("Shipments: %d (%d through assignShipments), confirmed %d, no free box %d, aborted by timeout %d%n",
+                shipments, batchShipments, confirmed, noFreeBox, aborted);
+        System.out.printf("Duplicate occupancy: %d boxes (%.4f%% of confirmed), in %d of %d schedules%n",
+                duplicates, confirmed == 0 ? 0 : 100.0 * duplicates / confirmed, schedulesWithDuplicates, config.schedules);
+        System.out.printf("Throughput: %.1f confirmed reservations per simulated second, %.2f round trips per shipment%n",
+                makespan == 0 ? 0 : confirmed * 1e6 / makespan, shipments == 0 ? 0 : (double) roundTrips / shipments);
+        if (!duplicateSeeds.isEmpty()) {
+            System.out.println("Replay a schedule with duplicates: schedules=1 seed=" + duplicateSeeds.get(0)
+                    + " (others: " + duplicateSeeds + ")");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package cassdemo.testing;
+
+import cassdemo.service.ReservationService;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Load test of ReservationService against an InMemoryBackend.
+ * Each client reserves a random shipment in a random locker, looks the locker up and releases the shipment again.
+ * Fails with exit code 1 on any 5xx or client-side failure, on a 503 the full worker queue does not account for
+ * (the in-memory backend never reports OVERLOADED), or when throughput or p99 latency misses its bound.
+ *
+ * Usage: ServiceLoadTest [clients] [seconds] [roundTripMicros] [workers] [queueCapacity] [minRequestsPerSecond] [maxP99Millis]
+ */
+public class ServiceLoadTest {
+
+    private static final int LOCKERS = 200;
+    private static final int SHIPMENTS = 5000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long roundTripMicros = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        int queueCapacity = args.length > 4 ? Integer.parseInt(args[4]) : 256;
+        long minRequestsPerSecond = args.length > 5 ? Long.parseLong(args[5]) : 200;
+        long maxP99Millis = args.length > 6 ? Long.parseLong(args[6]) : 2000;
+
+        Byte S = 1, M = 2, L = 3;
+        InMemoryBackend backend = new InMemoryBackend(roundTripMicros);
+        List<UUID> lockers = new ArrayList<>();
+        List<UUID> shipments = new ArrayList<>();
+        for (int i = 0; i < LOCKERS; i++) {
+            lockers.add(backend.insertLocker("LOCK" + i, S, S, S, M, M, M, L, L, L, L));
+        }
+        for (int i = 0; i < SHIPMENTS; i++) {
+            shipments.add(backend.insertShipment("SHIP" + i, (byte) (i % 3 + 1)));
+        }
+
+        ReservationService service = new ReservationService(backend, new InetSocketAddress("127.0.0.1", 0), workers, queueCapacity);
+        service.start();
+        String base = "http://127.0.0.1:" + service.getPort();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(clients))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            pool.execute(() -> {
+                long[] samples = new long[1 << 20];
+                int n = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    UUID locker = lockers.get(random.nextInt(lockers.size()));
+                    UUID shipment = shipments.get(random.nextInt(shipments.size()));
+                    String ids = "locker=" + locker + "&shipment=" + shipment;
+                    HttpRequest[] requests = {
+                            HttpRequest.newBuilder(URI.create(base + "/reservations?" + ids)).timeout(REQUEST_TIMEOUT).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                            HttpRequest.newBuilder(URI.create(base + "/lockers/" + locker)).timeout(REQUEST_TIMEOUT).GET().build(),
+                            HttpRequest.newBuilder(URI.create(base + "/reservations?" + ids)).timeout(REQUEST_TIMEOUT).DELETE().build()
+                    };
+                    for (HttpRequest request : requests) {
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (Exception e) {
+                            // -1 marks requests that failed or timed out on the client side
+                            status = -1;
+                        }
+                        if (n < samples.length) {
+                            samples[n++] = System.nanoTime() - start;
+                        }
+                        statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+                    }
+                }
+                latencies.add(Arrays.copyOf(samples, n));
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        service.stop(0);
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.println("Requests: " + all.length + " in " + seconds + "s, "
+                + (all.length / seconds) + " req/s with " + clients + " clients, " + workers + " workers, "
+                + roundTripMicros + "us backend round trip");
+        System.out.println("Latency p50=" + micros(all, 0.50) + "us p99=" + micros(all, 0.99) + "us max=" + micros(all, 1.0) + "us");
+        System.out.println("Statuses: " + new TreeMap<>(statuses));
+
+        List<String> failures = new ArrayList<>();
+        long overloaded = count(statuses, 503);
+        for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(statuses).entrySet()) {
+            if (status.getKey() < 0) {
+                failures.add(status.getValue().sum() + " requests failed or timed out on the client side");
+            } else if (status.getKey() >= 500 && status.getKey() != 503) {
+                failures.add(status.getValue().sum() + " requests answered " + status.getKey());
+            }
+        }
+        if (overloaded > service.getQueueRejections()) {
+            failures.add(overloaded + " requests answered 503, only " + service.getQueueRejections() + " found the worker queue full");
+        }
+        if (all.length / seconds < minRequestsPerSecond) {
+            failures.add("throughput " + (all.length / seconds) + " req/s below " + minRequestsPerSecond + " req/s");
+        }
+        if (micros(all, 0.99) > TimeUnit.MILLISECONDS.toMicros(maxP99Millis)) {
+            failures.add("p99 latency " + micros(all, 0.99) + "us above " + maxP99Millis + "ms");
+        }
+
+        if (!failures.isEmpty()) {
+            System.out.println("FAILED: " + String.join(", ", failures));
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+        System.exit(0);
+    }
+
+    private static long count(Map<Integer, LongAdder> statuses, int status) {
+        LongAdder adder = statuses.get(status);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private static long micros(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+}
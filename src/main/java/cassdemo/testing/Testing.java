@@ -2,6 +2,7 @@ package cassdemo.testing;
 
 import cassdemo.backend.BackendException;
 import cassdemo.backend.BackendSession;
+import cassdemo.backend.ReservationResult;
 import cassdemo.tables.*;
 
 import java.util.List;
@@ -19,6 +20,7 @@ public class Testing {
     private static final Logger logger = LoggerFactory.getLogger(Testing.class);
     public final BackendSession session;
     public static AtomicInteger duplicatesFound  = new AtomicInteger(0);
+    public static AtomicInteger overloaded = new AtomicInteger(0);
 
     public Testing(BackendSession session) {
         this.session = session;
@@ -109,10 +111,14 @@ public class Testing {
         List<Shipment> shipments = session.selectAllShipments();
 
         for (int i = 0; i < lockers.size() * 2; i++) {
-            session.insertShipmentIntoLocker(
+            ReservationResult result = session.insertShipmentIntoLocker(
                     lockers.get(random.nextInt(lockers.size())).getLocker_id(),
                     shipments.get(random.nextInt(shipments.size())).getShipment_id()
             );
+            // Rejected before reaching the reservation protocol, so it could not race
+            if (result == ReservationResult.OVERLOADED) {
+                overloaded.incrementAndGet();
+            }
         }
     }
 
@@ -127,6 +133,7 @@ public class Testing {
     public void stressTest() throws BackendException {
         System.out.print("START");
         duplicatesFound.set(0);
+        overloaded.set(0);
 
         this.session.deleteAll();
         this.generateRandomShipmentsAndRandomLockers();
@@ -151,5 +158,8 @@ public class Testing {
 
         System.out.println("Stress test end!");
         System.out.println("Found " + duplicatesFound.get() + " duplicates");
+        System.out.println(overloaded.get() + " reservations rejected by admission control");
+        System.out.println(session.getAdmissionController());
+        System.out.println(session.getExecutionProfiles().statsReport());
     }
 }